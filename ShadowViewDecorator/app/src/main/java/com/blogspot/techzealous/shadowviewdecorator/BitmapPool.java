@@ -0,0 +1,203 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps for the intermediate buffers of the shadows, bounded by the bytes of the pooled bitmaps.
+ * Bitmaps are kept in buckets by width, height and config. On Android 4.4+ a larger pooled bitmap with the same config
+ * is reconfigured when no bitmap with the requested size is pooled.
+ * Only bitmaps which are not referenced anywhere else may be put in the pool, shadows set on views or cached must never be.
+ */
+public class BitmapPool {
+
+	private static final int kSDK_LEVEL_KITKAT = 19;
+
+	private HashMap<Long, ArrayList<Bitmap>> mBuckets;
+	private LinkedList<Bitmap> mBitmaps;
+	private int mMaxBytes;
+	private int mSizeBytes;
+	private int mHitCount;
+	private int mMissCount;
+
+	/**
+	 * @param aMaxBytes - maximum bytes of all pooled bitmaps.
+	 */
+	public BitmapPool(int aMaxBytes)
+	{
+		super();
+		mBuckets = new HashMap<Long, ArrayList<Bitmap>>();
+		mBitmaps = new LinkedList<Bitmap>();
+		mMaxBytes = aMaxBytes;
+	}
+
+	/**
+	 * @return int - default size of the pool, 1/32 of the maximum heap size.
+	 */
+	public static int defaultMaxBytes()
+	{
+		return (int)Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a transparent mutable bitmap from the pool, or a new one if none fits.
+	 * @param aWidth - width of the bitmap.
+	 * @param aHeight - height of the bitmap.
+	 * @param aConfig - config of the bitmap.
+	 * @return Bitmap - the bitmap, put it back with put when it is no longer used.
+	 */
+	public synchronized Bitmap get(int aWidth, int aHeight, Config aConfig)
+	{
+		Bitmap bitmap = null;
+		ArrayList<Bitmap> bucket = mBuckets.get(bucketKey(aWidth, aHeight, aConfig));
+		if(bucket != null && !bucket.isEmpty()) {
+			bitmap = bucket.get(bucket.size() - 1);
+			remove(bitmap);
+		} else if(android.os.Build.VERSION.SDK_INT >= kSDK_LEVEL_KITKAT) {
+			bitmap = reconfigureSmallest(aWidth, aHeight, aConfig);
+		}
+
+		if(bitmap == null) {
+			mMissCount++;
+			return Bitmap.createBitmap(aWidth, aHeight, aConfig);
+		}
+		mHitCount++;
+		bitmap.eraseColor(Color.TRANSPARENT);
+		return bitmap;
+	}
+
+	/**
+	 * Puts a bitmap back in the pool. The oldest pooled bitmaps are recycled when the pool gets over its maximum size.
+	 * Bitmaps which are immutable or larger than the pool are recycled.
+	 * @param aBitmap - bitmap which is no longer used.
+	 * @return void.
+	 */
+	public synchronized void put(Bitmap aBitmap)
+	{
+		if(aBitmap == null || aBitmap.isRecycled()) {return;}
+		int bytes = byteCount(aBitmap);
+		if(!aBitmap.isMutable() || aBitmap.getConfig() == null || bytes > mMaxBytes) {
+			aBitmap.recycle();
+			return;
+		}
+
+		Long key = bucketKey(aBitmap.getWidth(), aBitmap.getHeight(), aBitmap.getConfig());
+		ArrayList<Bitmap> bucket = mBuckets.get(key);
+		if(bucket == null) {
+			bucket = new ArrayList<Bitmap>();
+			mBuckets.put(key, bucket);
+		}
+		bucket.add(aBitmap);
+		mBitmaps.addLast(aBitmap);
+		mSizeBytes += bytes;
+
+		while(mSizeBytes > mMaxBytes) {
+			Bitmap bitmapOldest = mBitmaps.getFirst();
+			remove(bitmapOldest);
+			bitmapOldest.recycle();
+		}
+	}
+
+	/**
+	 * Recycles all pooled bitmaps.
+	 * @return void.
+	 */
+	public synchronized void clear()
+	{
+		for(Bitmap bitmap : mBitmaps) {
+			bitmap.recycle();
+		}
+		mBitmaps.clear();
+		mBuckets.clear();
+		mSizeBytes = 0;
+	}
+
+	/**
+	 * @return int - count of get calls which reused a pooled bitmap.
+	 */
+	public synchronized int getHitCount()
+	{
+		return mHitCount;
+	}
+
+	/**
+	 * @return int - count of get calls which created a new bitmap.
+	 */
+	public synchronized int getMissCount()
+	{
+		return mMissCount;
+	}
+
+	/**
+	 * @return int - bytes of all pooled bitmaps.
+	 */
+	public synchronized int getSizeBytes()
+	{
+		return mSizeBytes;
+	}
+
+	/**
+	 * @return int - maximum bytes of all pooled bitmaps.
+	 */
+	public int getMaxBytes()
+	{
+		return mMaxBytes;
+	}
+
+	/**
+	 * Finds the smallest pooled bitmap with the same config which can hold the requested size and reconfigures it.
+	 * @return Bitmap - the reconfigured bitmap, already removed from the pool, or null.
+	 */
+	private Bitmap reconfigureSmallest(int aWidth, int aHeight, Config aConfig)
+	{
+		Bitmap bitmapSmallest = null;
+		int bytesNeeded = aWidth * aHeight * bytesPerPixel(aConfig);
+		for(Bitmap bitmap : mBitmaps) {
+			if(bitmap.getConfig() != aConfig || bitmap.getAllocationByteCount() < bytesNeeded) {continue;}
+			if(bitmapSmallest == null || bitmap.getAllocationByteCount() < bitmapSmallest.getAllocationByteCount()) {
+				bitmapSmallest = bitmap;
+			}
+		}
+		if(bitmapSmallest == null) {return null;}
+
+		remove(bitmapSmallest);
+		try {
+			bitmapSmallest.reconfigure(aWidth, aHeight, aConfig);
+		} catch (IllegalArgumentException e) {
+			bitmapSmallest.recycle();
+			return null;
+		}
+		return bitmapSmallest;
+	}
+
+	private void remove(Bitmap aBitmap)
+	{
+		ArrayList<Bitmap> bucket = mBuckets.get(bucketKey(aBitmap.getWidth(), aBitmap.getHeight(), aBitmap.getConfig()));
+		if(bucket != null) {bucket.remove(aBitmap);}
+		mBitmaps.remove(aBitmap);
+		mSizeBytes -= byteCount(aBitmap);
+	}
+
+	private static int byteCount(Bitmap aBitmap)
+	{
+		if(android.os.Build.VERSION.SDK_INT >= kSDK_LEVEL_KITKAT) {return aBitmap.getAllocationByteCount();}
+		return aBitmap.getRowBytes() * aBitmap.getHeight();
+	}
+
+	private static int bytesPerPixel(Config aConfig)
+	{
+		if(aConfig == Config.ALPHA_8) {return 1;}
+		if(aConfig == Config.ARGB_8888) {return 4;}
+		return 2;
+	}
+
+	private static Long bucketKey(int aWidth, int aHeight, Config aConfig)
+	{
+		return Long.valueOf(((long)aWidth << 32) | ((long)aHeight << 8) | aConfig.ordinal());
+	}
+}
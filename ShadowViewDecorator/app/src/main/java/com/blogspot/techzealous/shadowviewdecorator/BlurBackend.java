@@ -0,0 +1,30 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Blurs shadow masks. ShadowViewDecorator uses it for the Gaussian shadows, so the blur can be done
+ * with RenderScript on the device or in plain Java.
+ */
+public interface BlurBackend {
+
+	/**
+	 * Blurs the mask in place.
+	 * @param aMask - mask to blur.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	void blur(AlphaMask aMask, int aRadius);
+
+	/**
+	 * Used when blurring a downsampled mask.
+	 * @param aRadius - blur radius in pixels at full size.
+	 * @param aFactor - downsample factor of the mask.
+	 * @return int - blur radius which gives the same look on the downsampled mask.
+	 */
+	int scaleRadius(int aRadius, int aFactor);
+
+	/**
+	 * Frees native resources held by the backend. The backend can still be used after this.
+	 * @return void.
+	 */
+	void release();
+}
@@ -0,0 +1,44 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Single box blur pass in each direction, used by the box blur shadows.
+ */
+public class BoxBlurBackend implements BlurBackend {
+
+	private StripeRunner mStripeRunner;
+
+	/**
+	 * Creates a backend which blurs on the calling thread.
+	 */
+	public BoxBlurBackend()
+	{
+		this(new StripeRunner());
+	}
+
+	/**
+	 * Creates a backend which splits every pass in stripes with the passed in runner.
+	 * @param aStripeRunner - runner for the stripes.
+	 */
+	public BoxBlurBackend(StripeRunner aStripeRunner)
+	{
+		super();
+		mStripeRunner = aStripeRunner;
+	}
+
+	@Override
+	public void blur(AlphaMask aMask, int aRadius)
+	{
+		BoxBlur.blurAlpha(aMask, aRadius, mStripeRunner);
+	}
+
+	@Override
+	public int scaleRadius(int aRadius, int aFactor)
+	{
+		return MaskScaler.scaleBoxRadius(aRadius, aFactor);
+	}
+
+	@Override
+	public void release()
+	{
+	}
+}
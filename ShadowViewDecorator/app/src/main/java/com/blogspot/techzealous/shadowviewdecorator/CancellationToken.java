@@ -0,0 +1,82 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Cancellation flag of a decoration job. The job sets its token as current on its thread while it runs,
+ * StripeRunner checks the current token between the chunks of each pass and stops the blur once it is cancelled.
+ */
+public class CancellationToken {
+
+	private static final ThreadLocal<CancellationToken> sCurrent = new ThreadLocal<CancellationToken>();
+
+	private volatile boolean mIsCancelled;
+	private volatile Future<?> mFuture;
+
+	/**
+	 * @return CancellationToken - token of the job running on the calling thread, or null.
+	 */
+	public static CancellationToken current()
+	{
+		return sCurrent.get();
+	}
+
+	/**
+	 * @param aToken - token of the job which runs on the calling thread, null when the job is done.
+	 * @return void.
+	 */
+	public static void setCurrent(CancellationToken aToken)
+	{
+		if(aToken == null) {
+			sCurrent.remove();
+		} else {
+			sCurrent.set(aToken);
+		}
+	}
+
+	/**
+	 * Throws if the token of the job running on the calling thread is cancelled.
+	 * @return void.
+	 */
+	public static void throwIfCurrentCancelled()
+	{
+		CancellationToken token = sCurrent.get();
+		if(token != null) {token.throwIfCancelled();}
+	}
+
+	/**
+	 * @param aFuture - future of the job, the token is also cancelled when the future is.
+	 * @return void.
+	 */
+	public void setFuture(Future<?> aFuture)
+	{
+		mFuture = aFuture;
+	}
+
+	/**
+	 * @return void.
+	 */
+	public void cancel()
+	{
+		mIsCancelled = true;
+	}
+
+	/**
+	 * @return boolean - true if the token or the future of the job was cancelled.
+	 */
+	public boolean isCancelled()
+	{
+		Future<?> future = mFuture;
+		return mIsCancelled || (future != null && future.isCancelled());
+	}
+
+	/**
+	 * @return void.
+	 * @throws CancellationException - if the token is cancelled.
+	 */
+	public void throwIfCancelled()
+	{
+		if(isCancelled()) {throw new CancellationException("Decoration job was cancelled");}
+	}
+}
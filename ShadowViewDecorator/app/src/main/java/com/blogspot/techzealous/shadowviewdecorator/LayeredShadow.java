@@ -0,0 +1,228 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.Arrays;
+
+/**
+ * Layered shadow of dropShadow and createShadow in a single pass over the mask.
+ * The layered shadow draws the shape aLayersCount times, each layer shrunk by aShadowSize / aLayersCount on every side
+ * and with aAlphaStep more alpha, so every blit covers the whole mask. Here the layers covering a pixel follow
+ * from the distance of the pixel to the edge of the shape: a pixel n whole pixels inside the edge is covered by
+ * the layers up to n / (aShadowSize / aLayersCount). Its alpha is the source over blend of those layers,
+ * taken from a table with one entry per layer.
+ * When all sides have the shadow the distance is a chamfer approximation of the Euclidean distance, which is how a shape
+ * shrinks inside its bounds, otherwise it is measured straight towards the selected sides, as the layers then only shrink
+ * on those sides. Either way the cost does not grow with the count of layers.
+ * The result is not the same as the layer loop on every pixel: a pixel counts as inside the shape when its alpha is
+ * at least 128, so antialiased edge pixels get a whole layer or none, and the chamfer distance is off by up to about
+ * 6% of the Euclidean one on the diagonals. Such pixels land one or two layers off the loop. On rounded rectangles with
+ * shadow sizes of 8 to 32 and 2 to 8 layers the alpha differs by at most two layer steps, 44 of 255 for an initial alpha
+ * of 20 and a step of 5, while the mean difference stays below 2.5 of 255, see LayeredShadowTest.
+ */
+public class LayeredShadow {
+
+	/** Chamfer distance of a step along an axis and of a diagonal step, 3 and 4 approximate 1 and the square root of 2. */
+	private static final int kCHAMFER_AXIS = 3;
+	private static final int kCHAMFER_DIAGONAL = 4;
+
+	private LayeredShadow() {}
+
+	/**
+	 * Replaces the shape in the mask with its layered shadow on all sides.
+	 * @param aMask - the shape scaled to the first layer, the shadow is written in place.
+	 * @param aShadowSize - size of the shadow in pixels.
+	 * @param aLayersCount - count of layers, 0 clears the mask.
+	 * @param aAlphaInit - alpha of the first layer.
+	 * @param aAlphaStep - alpha added with each layer.
+	 * @return void.
+	 */
+	public static void render(AlphaMask aMask, int aShadowSize, int aLayersCount, int aAlphaInit, int aAlphaStep)
+	{
+		render(aMask, aShadowSize, aLayersCount, aAlphaInit, aAlphaStep, true, true, true, true);
+	}
+
+	/**
+	 * Replaces the shape in the mask with its layered shadow on the selected sides.
+	 * Stops with a CancellationException between the passes if the current job is cancelled.
+	 * @param aMask - the shape scaled to the first layer, the shadow is written in place.
+	 * @param aShadowSize - size of the shadow in pixels.
+	 * @param aLayersCount - count of layers, 0 clears the mask.
+	 * @param aAlphaInit - alpha of the first layer.
+	 * @param aAlphaStep - alpha added with each layer.
+	 * @param aShadowLeft - layers shrink from the left side.
+	 * @param aShadowTop - layers shrink from the top side.
+	 * @param aShadowRight - layers shrink from the right side.
+	 * @param aShadowBottom - layers shrink from the bottom side.
+	 * @return void.
+	 */
+	public static void render(AlphaMask aMask, int aShadowSize, int aLayersCount, int aAlphaInit, int aAlphaStep,
+			boolean aShadowLeft, boolean aShadowTop, boolean aShadowRight, boolean aShadowBottom)
+	{
+		int count = aMask.width * aMask.height;
+		if(aLayersCount <= 0) {
+			for(int x = 0; x < count; x++) {
+				aMask.pixels[x] = 0;
+			}
+			return;
+		}
+
+		int[] table = createLayerTable(aLayersCount, aAlphaInit, aAlphaStep);
+		int last = aLayersCount - 1;
+		int add = aShadowSize / aLayersCount;
+		if(add <= 0 || !(aShadowLeft || aShadowTop || aShadowRight || aShadowBottom)) {
+			/* all layers have the same bounds */
+			for(int x = 0; x < count; x++) {
+				aMask.pixels[x] = (byte)(((aMask.pixels[x] & 0xFF) * table[last]) / 255);
+			}
+			return;
+		}
+
+		if(aShadowLeft && aShadowTop && aShadowRight && aShadowBottom) {
+			renderChamfer(aMask, table, add);
+		} else {
+			int[] depths = sideDepths(aMask, aShadowLeft, aShadowTop, aShadowRight, aShadowBottom);
+			CancellationToken.throwIfCurrentCancelled();
+			for(int x = 0; x < count; x++) {
+				int alpha = aMask.pixels[x] & 0xFF;
+				if(alpha == 0) {continue;}
+				int layer = depths[x] / add;
+				aMask.pixels[x] = (byte)((alpha * table[(layer > last) ? last : layer]) / 255);
+			}
+		}
+	}
+
+	/**
+	 * Layers from the 3-4 chamfer distance to the nearest outside pixel, a third of a pixel per unit, exact along the axes
+	 * and within 6% of the Euclidean distance on the diagonals. The forward pass sweeps down, the backward pass sweeps up
+	 * and writes each pixel as soon as its distance is final, so the mask is read twice and written once.
+	 */
+	private static void renderChamfer(AlphaMask aMask, int[] aTable, int aAdd)
+	{
+		/* the grid has a ring of outside pixels, so shapes touching the border of the mask end there */
+		int width = aMask.width;
+		int gridWidth = width + 2;
+		int[] grid = new int[gridWidth * (aMask.height + 2)];
+		byte[] pixels = aMask.pixels;
+		/* the distance of the previous pixel stays in a local and outside pixels are masked with the sign of their alpha,
+		 * so the passes have no branches */
+		for(int y = 0; y < aMask.height; y++) {
+			int offset = y * width;
+			int up = (y * gridWidth) + 1;
+			int distance = 0;
+			for(int x = 0; x < width; x++) {
+				distance = Math.min(distance, grid[up + x]) + kCHAMFER_AXIS;
+				distance = Math.min(distance, Math.min(grid[up + x - 1], grid[up + x + 1]) + kCHAMFER_DIAGONAL);
+				distance &= pixels[offset + x] >> 7;
+				grid[up + gridWidth + x] = distance;
+			}
+		}
+		CancellationToken.throwIfCurrentCancelled();
+
+		/* alpha of the layer per distance, up to the depth of the last layer */
+		int last = aTable.length - 1;
+		int distanceLast = kCHAMFER_AXIS * ((aAdd * last) + 1);
+		int[] alphas = new int[distanceLast + 1];
+		for(int distance = 0; distance <= distanceLast; distance++) {
+			int layer = Math.max(distance - kCHAMFER_AXIS, 0) / (kCHAMFER_AXIS * aAdd);
+			alphas[distance] = aTable[(layer > last) ? last : layer];
+		}
+
+		for(int y = aMask.height - 1; y >= 0; y--) {
+			int offset = y * width;
+			int index = ((y + 1) * gridWidth) + 1;
+			int down = index + gridWidth;
+			int distance = 0;
+			for(int x = width - 1; x >= 0; x--) {
+				distance = Math.min(distance + kCHAMFER_AXIS, grid[index + x]);
+				distance = Math.min(distance, grid[down + x] + kCHAMFER_AXIS);
+				distance = Math.min(distance, Math.min(grid[down + x - 1], grid[down + x + 1]) + kCHAMFER_DIAGONAL);
+				grid[index + x] = distance;
+				pixels[offset + x] = (byte)(((pixels[offset + x] & 0xFF) * alphas[(distance > distanceLast) ? distanceLast : distance]) / 255);
+			}
+		}
+	}
+
+	/**
+	 * @return int[] - alpha of the pixels covered by the layers 0 .. n, the layers blended with source over.
+	 */
+	private static int[] createLayerTable(int aLayersCount, int aAlphaInit, int aAlphaStep)
+	{
+		int[] table = new int[aLayersCount];
+		int alphaLayer = Math.max(0, Math.min(aAlphaInit, 255));
+		int alpha = 0;
+		for(int x = 0; x < aLayersCount; x++) {
+			alpha = alphaLayer + ((alpha * (255 - alphaLayer)) / 255);
+			table[x] = alpha;
+			alphaLayer = Math.max(0, Math.min(alphaLayer + aAlphaStep, 255));
+		}
+		return table;
+	}
+
+	/**
+	 * Counts for each inside pixel the inside pixels between it and the nearest outside pixel or border
+	 * straight towards each selected side, pixels with alpha of at least 128 are inside the shape.
+	 * @return int[] - the smallest count of the selected sides, 0 for the outside pixels.
+	 */
+	private static int[] sideDepths(AlphaMask aMask, boolean aShadowLeft, boolean aShadowTop, boolean aShadowRight,
+			boolean aShadowBottom)
+	{
+		int width = aMask.width;
+		int height = aMask.height;
+		byte[] pixels = aMask.pixels;
+		int[] depths = new int[width * height];
+		for(int x = 0; x < depths.length; x++) {
+			depths[x] = ((pixels[x] & 0xFF) >= 128) ? Integer.MAX_VALUE : 0;
+		}
+
+		if(aShadowLeft || aShadowRight) {
+			for(int y = 0; y < height; y++) {
+				int offset = y * width;
+				if(aShadowLeft) {
+					int run = 0;
+					for(int x = 0; x < width; x++) {
+						if((pixels[offset + x] & 0xFF) < 128) {
+							run = 0;
+						} else {
+							depths[offset + x] = Math.min(depths[offset + x], run++);
+						}
+					}
+				}
+				if(aShadowRight) {
+					int run = 0;
+					for(int x = width - 1; x >= 0; x--) {
+						if((pixels[offset + x] & 0xFF) < 128) {
+							run = 0;
+						} else {
+							depths[offset + x] = Math.min(depths[offset + x], run++);
+						}
+					}
+				}
+			}
+		}
+
+		/* rows are walked in order with one run per column, so the vertical passes read the mask sequentially */
+		int[] runs = new int[width];
+		if(aShadowTop) {
+			for(int y = 0; y < height; y++) {
+				updateColumnRuns(depths, pixels, runs, y * width, width);
+			}
+		}
+		if(aShadowBottom) {
+			Arrays.fill(runs, 0);
+			for(int y = height - 1; y >= 0; y--) {
+				updateColumnRuns(depths, pixels, runs, y * width, width);
+			}
+		}
+		return depths;
+	}
+
+	private static void updateColumnRuns(int[] aDepths, byte[] aPixels, int[] aRuns, int aOffset, int aWidth)
+	{
+		for(int x = 0; x < aWidth; x++) {
+			if((aPixels[aOffset + x] & 0xFF) < 128) {
+				aRuns[x] = 0;
+			} else {
+				aDepths[aOffset + x] = Math.min(aDepths[aOffset + x], aRuns[x]++);
+			}
+		}
+	}
+}
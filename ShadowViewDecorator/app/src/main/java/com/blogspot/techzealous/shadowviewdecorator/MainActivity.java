@@ -77,4 +77,10 @@ public class MainActivity extends Activity {
 			}
 		});
 	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mDecorator.release();
+	}
 }
@@ -0,0 +1,177 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Bounds the memory held at once by the running shadow jobs. Before a job allocates its bitmaps it asks for the peak bytes
+ * of each quality level it can render at, best first, and gets the best level which fits in what is left of the budget.
+ * A job which fits at a lower level only is downgraded and reported, a job which fits at no level waits until other jobs
+ * release their bytes. A job is always admitted, at its cheapest level, when no other job is running,
+ * so a job larger than the whole budget still runs.
+ * One governor can be shared by several decorators to bound all of their jobs together.
+ */
+public class MemoryGovernor {
+
+	/**
+	 * Receives the downgrades of the jobs.
+	 */
+	public interface DowngradeListener {
+
+		/**
+		 * Called on the thread of the job before it renders.
+		 * @param aJob - description of the job.
+		 * @param aLevel - quality level the job was admitted at, 1 or more.
+		 * @param aBytesFull - peak bytes of the job at full quality.
+		 * @param aBytesAdmitted - peak bytes of the job at the admitted level.
+		 * @return void.
+		 */
+		void onDowngrade(String aJob, int aLevel, long aBytesFull, long aBytesAdmitted);
+	}
+
+	private static final String LOG = "MemoryGovernor";
+	private static final long kWAIT_MILLIS = 50;
+
+	private long mBudgetBytes;
+	private long mInFlightBytes;
+	private int mInFlightCount;
+	private int mDowngradeCount;
+	private DowngradeListener mDowngradeListener;
+
+	/**
+	 * @param aBudgetBytes - maximum peak bytes of all running jobs together.
+	 */
+	public MemoryGovernor(long aBudgetBytes)
+	{
+		super();
+		mBudgetBytes = aBudgetBytes;
+	}
+
+	/**
+	 * @return long - default budget, 1/8 of the maximum heap size.
+	 */
+	public static long defaultBudgetBytes()
+	{
+		return Runtime.getRuntime().maxMemory() / 8;
+	}
+
+	/**
+	 * Admits a job, waiting while it fits at no level. Stops with a CancellationException if the current job is cancelled
+	 * or the thread is interrupted while it waits. Pass the bytes of the admitted level to release
+	 * once the job no longer holds its bitmaps. A downgrade is reported after the governor is unlocked,
+	 * so a slow DowngradeListener does not hold up the other jobs.
+	 * @param aJob - description of the job, for the downgrade reports.
+	 * @param aLevelBytes - peak bytes of the job at each quality level, from the best to the cheapest.
+	 * @return int - index of the admitted level.
+	 */
+	public int acquire(String aJob, long[] aLevelBytes)
+	{
+		int level = admit(aLevelBytes);
+		if(level > 0) {reportDowngrade(aJob, level, aLevelBytes[0], aLevelBytes[level]);}
+		return level;
+	}
+
+	/**
+	 * Waits until the job fits at a level and takes its bytes, see acquire.
+	 * @param aLevelBytes - peak bytes of the job at each quality level, from the best to the cheapest.
+	 * @return int - index of the admitted level.
+	 */
+	private synchronized int admit(long[] aLevelBytes)
+	{
+		int last = aLevelBytes.length - 1;
+		while(true) {
+			long available = mBudgetBytes - mInFlightBytes;
+			int level = 0;
+			while(level <= last && aLevelBytes[level] > available) {
+				level++;
+			}
+			if(level > last && mInFlightCount == 0) {level = last;}
+			if(level <= last) {
+				mInFlightBytes += aLevelBytes[level];
+				mInFlightCount++;
+				if(level > 0) {mDowngradeCount++;}
+				return level;
+			}
+
+			try {
+				wait(kWAIT_MILLIS);
+			} catch (InterruptedException e) {
+				/* the executor is shutting down */
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Decoration job was interrupted");
+			}
+			CancellationToken.throwIfCurrentCancelled();
+		}
+	}
+
+	/**
+	 * @param aBytes - bytes of the level returned by acquire.
+	 * @return void.
+	 */
+	public synchronized void release(long aBytes)
+	{
+		mInFlightBytes -= aBytes;
+		mInFlightCount--;
+		notifyAll();
+	}
+
+	/**
+	 * @return long - maximum peak bytes of all running jobs together.
+	 */
+	public synchronized long getBudgetBytes()
+	{
+		return mBudgetBytes;
+	}
+
+	/**
+	 * @param aBudgetBytes - new budget, waiting jobs are admitted if it grows.
+	 * @return void.
+	 */
+	public synchronized void setBudgetBytes(long aBudgetBytes)
+	{
+		mBudgetBytes = aBudgetBytes;
+		notifyAll();
+	}
+
+	/**
+	 * @return long - peak bytes of the running jobs.
+	 */
+	public synchronized long getInFlightBytes()
+	{
+		return mInFlightBytes;
+	}
+
+	/**
+	 * @return int - count of jobs admitted below full quality.
+	 */
+	public synchronized int getDowngradeCount()
+	{
+		return mDowngradeCount;
+	}
+
+	/**
+	 * @param aDowngradeListener - listener of the downgrades, or null. Downgrades are also logged.
+	 * @return void.
+	 */
+	public synchronized void setDowngradeListener(DowngradeListener aDowngradeListener)
+	{
+		mDowngradeListener = aDowngradeListener;
+	}
+
+	/* Called without the lock of the governor held. */
+	private void reportDowngrade(String aJob, int aLevel, long aBytesFull, long aBytesAdmitted)
+	{
+		DowngradeListener listener = null;
+		long inFlightBytes = 0;
+		long budgetBytes = 0;
+		synchronized(this) {
+			listener = mDowngradeListener;
+			inFlightBytes = mInFlightBytes;
+			budgetBytes = mBudgetBytes;
+		}
+		Log.i(LOG, aJob + " downgraded to level " + aLevel + ", " + aBytesAdmitted + " of " + aBytesFull + " bytes, "
+				+ inFlightBytes + " of " + budgetBytes + " in flight");
+		if(listener != null) {listener.onDowngrade(aJob, aLevel, aBytesFull, aBytesAdmitted);}
+	}
+}
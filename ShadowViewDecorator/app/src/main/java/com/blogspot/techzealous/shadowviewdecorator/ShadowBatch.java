@@ -0,0 +1,53 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Views and their shadows for ShadowViewDecorator.dropShadowBatch. The shadows are rendered in one job
+ * and set on the views together, spread over as few frames as the frame budget allows.
+ */
+public class ShadowBatch {
+
+	private List<View> mViews;
+	private List<ShadowSpec> mSpecs;
+
+	public ShadowBatch()
+	{
+		super();
+		mViews = new ArrayList<View>();
+		mSpecs = new ArrayList<ShadowSpec>();
+	}
+
+	/**
+	 * @param aView - view which to decorate.
+	 * @param aSpec - shadow of the view.
+	 * @return ShadowBatch - this batch.
+	 */
+	public ShadowBatch add(View aView, ShadowSpec aSpec)
+	{
+		mViews.add(aView);
+		mSpecs.add(aSpec);
+		return this;
+	}
+
+	/**
+	 * @return int - count of views in the batch.
+	 */
+	public int size()
+	{
+		return mViews.size();
+	}
+
+	View getView(int aIndex)
+	{
+		return mViews.get(aIndex);
+	}
+
+	ShadowSpec getSpec(int aIndex)
+	{
+		return mSpecs.get(aIndex);
+	}
+}
@@ -0,0 +1,225 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Xfermode;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Wraps the original background of a view and draws a tinted ALPHA_8 shadow mask below it at draw time,
+ * instead of baking the background and the shadow into one bitmap. The original drawable keeps working as before:
+ * it gets the bounds, state, level, hotspot and visibility and its padding is the padding of the wrapper,
+ * so state lists and ripples still animate. The mask can be shared by all views with the same shape.
+ * The mask covers the bounds grown by the outsets, so the shadow is drawn outside the bounds and the parent must not clip it.
+ */
+public class ShadowDrawable extends Drawable implements Drawable.Callback {
+
+	private Drawable mDrawable;
+	private Bitmap mMask;
+	private Rect mOutsets;
+	private int mShadowColor;
+	private int mAlpha;
+	private Paint mPaint;
+	private Rect mRectDest;
+
+	/**
+	 * @param aDrawable - the original background, may be null.
+	 * @param aMask - ALPHA_8 mask of the shadow, scaled to the bounds grown by the outsets when drawn.
+	 * @param aOutsets - how far the mask reaches out of the bounds on each side.
+	 * @param aShadowColor - color of the shadow.
+	 */
+	public ShadowDrawable(Drawable aDrawable, Bitmap aMask, Rect aOutsets, int aShadowColor)
+	{
+		super();
+		mDrawable = aDrawable;
+		mMask = aMask;
+		mOutsets = new Rect(aOutsets);
+		mShadowColor = aShadowColor;
+		mAlpha = 255;
+		mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		mRectDest = new Rect();
+		if(mDrawable != null) {mDrawable.setCallback(this);}
+	}
+
+	/**
+	 * @return Drawable - the original background.
+	 */
+	public Drawable getDrawable()
+	{
+		return mDrawable;
+	}
+
+	/**
+	 * @param aShadowColor - new color of the shadow, the mask stays the same.
+	 * @return void.
+	 */
+	public void setShadowColor(int aShadowColor)
+	{
+		mShadowColor = aShadowColor;
+		invalidateSelf();
+	}
+
+	@Override
+	public void draw(Canvas aCanvas)
+	{
+		Rect bounds = getBounds();
+		mRectDest.set(bounds.left - mOutsets.left, bounds.top - mOutsets.top, bounds.right + mOutsets.right,
+				bounds.bottom + mOutsets.bottom);
+		drawShadow(aCanvas, mRectDest, (Color.alpha(mShadowColor) * mAlpha) / 255);
+		if(mDrawable != null) {mDrawable.draw(aCanvas);}
+	}
+
+	/**
+	 * Draws the shadow below the original background.
+	 * @param aCanvas - canvas to draw on.
+	 * @param aRectDest - bounds grown by the outsets.
+	 * @param aAlpha - alpha of the shadow color combined with the alpha of the drawable.
+	 * @return void.
+	 */
+	protected void drawShadow(Canvas aCanvas, Rect aRectDest, int aAlpha)
+	{
+		drawMask(aCanvas, mMask, aRectDest, aAlpha);
+	}
+
+	/**
+	 * Draws an ALPHA_8 mask tinted with the shadow color.
+	 * @param aCanvas - canvas to draw on.
+	 * @param aMask - the mask.
+	 * @param aRectDest - where to draw it.
+	 * @param aAlpha - alpha of the tint.
+	 * @return void.
+	 */
+	protected void drawMask(Canvas aCanvas, Bitmap aMask, Rect aRectDest, int aAlpha)
+	{
+		drawMask(aCanvas, aMask, aRectDest, aAlpha, null);
+	}
+
+	/**
+	 * Draws an ALPHA_8 mask tinted with the shadow color, composed with the passed in transfer mode.
+	 * @param aXfermode - transfer mode, null for source over.
+	 * @return void.
+	 */
+	protected void drawMask(Canvas aCanvas, Bitmap aMask, Rect aRectDest, int aAlpha, Xfermode aXfermode)
+	{
+		if(aMask == null || aAlpha <= 0) {return;}
+		mPaint.setColor(mShadowColor);
+		mPaint.setAlpha(aAlpha);
+		mPaint.setXfermode(aXfermode);
+		aCanvas.drawBitmap(aMask, null, aRectDest, mPaint);
+		mPaint.setXfermode(null);
+	}
+
+	@Override
+	public void setAlpha(int aAlpha)
+	{
+		mAlpha = aAlpha;
+		if(mDrawable != null) {mDrawable.setAlpha(aAlpha);}
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter aColorFilter)
+	{
+		mPaint.setColorFilter(aColorFilter);
+		if(mDrawable != null) {mDrawable.setColorFilter(aColorFilter);}
+		invalidateSelf();
+	}
+
+	@Override
+	public int getOpacity()
+	{
+		return PixelFormat.TRANSLUCENT;
+	}
+
+	@Override
+	public boolean getPadding(Rect aPadding)
+	{
+		if(mDrawable == null) {return super.getPadding(aPadding);}
+		return mDrawable.getPadding(aPadding);
+	}
+
+	@Override
+	public int getIntrinsicWidth()
+	{
+		return (mDrawable != null) ? mDrawable.getIntrinsicWidth() : -1;
+	}
+
+	@Override
+	public int getIntrinsicHeight()
+	{
+		return (mDrawable != null) ? mDrawable.getIntrinsicHeight() : -1;
+	}
+
+	@Override
+	public boolean isStateful()
+	{
+		return mDrawable != null && mDrawable.isStateful();
+	}
+
+	@Override
+	protected boolean onStateChange(int[] aState)
+	{
+		return mDrawable != null && mDrawable.setState(aState);
+	}
+
+	@Override
+	protected boolean onLevelChange(int aLevel)
+	{
+		return mDrawable != null && mDrawable.setLevel(aLevel);
+	}
+
+	@Override
+	protected void onBoundsChange(Rect aBounds)
+	{
+		if(mDrawable != null) {mDrawable.setBounds(aBounds);}
+	}
+
+	@Override
+	public boolean setVisible(boolean aIsVisible, boolean aIsRestart)
+	{
+		boolean isChanged = super.setVisible(aIsVisible, aIsRestart);
+		if(mDrawable != null) {isChanged |= mDrawable.setVisible(aIsVisible, aIsRestart);}
+		return isChanged;
+	}
+
+	@Override
+	public void jumpToCurrentState()
+	{
+		if(mDrawable != null) {mDrawable.jumpToCurrentState();}
+	}
+
+	@Override
+	public void setHotspot(float aX, float aY)
+	{
+		if(mDrawable != null) {mDrawable.setHotspot(aX, aY);}
+	}
+
+	@Override
+	public void setHotspotBounds(int aLeft, int aTop, int aRight, int aBottom)
+	{
+		if(mDrawable != null) {mDrawable.setHotspotBounds(aLeft, aTop, aRight, aBottom);}
+	}
+
+	@Override
+	public void invalidateDrawable(Drawable aWho)
+	{
+		invalidateSelf();
+	}
+
+	@Override
+	public void scheduleDrawable(Drawable aWho, Runnable aWhat, long aWhen)
+	{
+		scheduleSelf(aWhat, aWhen);
+	}
+
+	@Override
+	public void unscheduleDrawable(Drawable aWho, Runnable aWhat)
+	{
+		unscheduleSelf(aWhat);
+	}
+}
@@ -0,0 +1,14 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Receives the metrics of each shadow request of ShadowViewDecorator, see setMetricsListener.
+ */
+public interface ShadowMetricsListener {
+
+	/**
+	 * Called on the main thread once the shadow of the request was set on the view.
+	 * @param aMetrics - metrics of the request, not changed after this call.
+	 * @return void.
+	 */
+	void onShadowMetrics(ShadowMetrics aMetrics);
+}
@@ -0,0 +1,127 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Stretchable shadow drawn from a small ALPHA_8 tile. The tile has the size (2 * half + 1) x (2 * half + 1):
+ * the four corners are drawn as they are, the middle row and column of the tile are stretched to fill the edges
+ * and the middle pixel fills the center. The memory of the shadow does not depend on the size of the view.
+ */
+public class ShadowNinePatchDrawable extends Drawable {
+
+	private ShadowState mState;
+	private Paint mPaint;
+	private Rect mRectSrc;
+	private Rect mRectDest;
+
+	/**
+	 * @param aTile - ALPHA_8 tile with the blurred shape, its width and height must be odd.
+	 * @param aShadowColor - color of the shadow.
+	 */
+	public ShadowNinePatchDrawable(Bitmap aTile, int aShadowColor)
+	{
+		this(new ShadowState(aTile, aShadowColor));
+	}
+
+	private ShadowNinePatchDrawable(ShadowState aState)
+	{
+		super();
+		mState = aState;
+		mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		mPaint.setColor(aState.mShadowColor);
+		mRectSrc = new Rect();
+		mRectDest = new Rect();
+	}
+
+	/**
+	 * @return Bitmap - the ALPHA_8 tile, shared by all drawables created from the same constant state.
+	 */
+	public Bitmap getTile()
+	{
+		return mState.mTile;
+	}
+
+	@Override
+	public void draw(Canvas aCanvas)
+	{
+		Rect bounds = getBounds();
+		Bitmap tile = mState.mTile;
+		int halfWidth = tile.getWidth() / 2;
+		int halfHeight = tile.getHeight() / 2;
+
+		int cornerWidth = Math.min(halfWidth, bounds.width() / 2);
+		int cornerHeight = Math.min(halfHeight, bounds.height() / 2);
+		int[] srcX = {0, halfWidth, halfWidth + 1, tile.getWidth()};
+		int[] srcY = {0, halfHeight, halfHeight + 1, tile.getHeight()};
+		int[] destX = {bounds.left, bounds.left + cornerWidth, bounds.right - cornerWidth, bounds.right};
+		int[] destY = {bounds.top, bounds.top + cornerHeight, bounds.bottom - cornerHeight, bounds.bottom};
+
+		for(int row = 0; row < 3; row++) {
+			if(destY[row] >= destY[row + 1]) {continue;}
+			for(int col = 0; col < 3; col++) {
+				if(destX[col] >= destX[col + 1]) {continue;}
+				mRectSrc.set(srcX[col], srcY[row], srcX[col + 1], srcY[row + 1]);
+				mRectDest.set(destX[col], destY[row], destX[col + 1], destY[row + 1]);
+				aCanvas.drawBitmap(tile, mRectSrc, mRectDest, mPaint);
+			}
+		}
+	}
+
+	@Override
+	public void setAlpha(int aAlpha)
+	{
+		mPaint.setAlpha((Color.alpha(mState.mShadowColor) * aAlpha) / 255);
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter aColorFilter)
+	{
+		mPaint.setColorFilter(aColorFilter);
+		invalidateSelf();
+	}
+
+	@Override
+	public int getOpacity()
+	{
+		return PixelFormat.TRANSLUCENT;
+	}
+
+	@Override
+	public ConstantState getConstantState()
+	{
+		return mState;
+	}
+
+	private static class ShadowState extends ConstantState {
+
+		private Bitmap mTile;
+		private int mShadowColor;
+
+		public ShadowState(Bitmap aTile, int aShadowColor)
+		{
+			super();
+			mTile = aTile;
+			mShadowColor = aShadowColor;
+		}
+
+		@Override
+		public Drawable newDrawable()
+		{
+			return new ShadowNinePatchDrawable(this);
+		}
+
+		@Override
+		public int getChangingConfigurations()
+		{
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Blurred masks of one shape at geometric radius steps 0, 1, 2, 4 .. up to a maximum radius.
+ * A shadow with a radius between two levels is drawn by adding the two nearest levels, weighted by the position between them,
+ * so an elevation animation needs no blur per frame, only two bitmap draws.
+ */
+public class ShadowPyramid {
+
+	private ShadowPyramid() {}
+
+	/**
+	 * @param aMaxRadius - largest radius the pyramid has to cover.
+	 * @return int[] - radii of the levels, 0 and then powers of 2, the last one at least aMaxRadius.
+	 */
+	public static int[] levelRadii(int aMaxRadius)
+	{
+		int count = 1;
+		for(int radius = 1; radius < aMaxRadius; radius *= 2) {
+			count++;
+		}
+		int[] radii = new int[count + 1];
+		for(int x = 1; x < radii.length; x++) {
+			radii[x] = 1 << (x - 1);
+		}
+		return radii;
+	}
+
+	/**
+	 * Blurs one level from the shape.
+	 * @param aShape - mask of the shape.
+	 * @param aPadding - transparent border around the shape, at least the largest radius so the blur is not cut.
+	 * @param aRadius - blur radius of the level.
+	 * @param aBlurBackend - backend which blurs the level.
+	 * @return AlphaMask - the level, larger than the shape by aPadding on each side.
+	 */
+	public static AlphaMask buildLevel(AlphaMask aShape, int aPadding, int aRadius, BlurBackend aBlurBackend)
+	{
+		int width = aShape.width + (aPadding * 2);
+		AlphaMask level = new AlphaMask(width, aShape.height + (aPadding * 2));
+		for(int y = 0; y < aShape.height; y++) {
+			System.arraycopy(aShape.pixels, y * aShape.width, level.pixels, ((y + aPadding) * width) + aPadding, aShape.width);
+		}
+		if(aRadius > 0) {aBlurBackend.blur(level, aRadius);}
+		return level;
+	}
+
+	/**
+	 * Position of a radius between the levels, interpolated in log space above radius 1 as the radii grow geometrically.
+	 * @param aRadii - radii of the levels.
+	 * @param aRadius - radius of the shadow to draw.
+	 * @return float - index of the lower level plus the weight of the upper level, clamped to the levels.
+	 */
+	public static float levelPosition(int[] aRadii, float aRadius)
+	{
+		int last = aRadii.length - 1;
+		if(aRadius <= aRadii[0]) {return 0f;}
+		if(aRadius >= aRadii[last]) {return last;}
+
+		int index = 0;
+		while(aRadii[index + 1] < aRadius) {
+			index++;
+		}
+		float lower = aRadii[index];
+		float upper = aRadii[index + 1];
+		if(lower <= 0f) {return index + (aRadius / upper);}
+		return index + (float)(Math.log(aRadius / lower) / Math.log(upper / lower));
+	}
+
+	/**
+	 * Splits the alpha of the shadow between the two levels around a position. The two alphas add up to aAlpha,
+	 * so an area which is opaque in both levels keeps the alpha of the shadow when the levels are added.
+	 * @param aAlpha - alpha of the shadow.
+	 * @param aWeight - weight of the upper level, the fraction of levelPosition.
+	 * @return int - alpha of the upper level, the lower level gets aAlpha minus it.
+	 */
+	public static int upperLevelAlpha(int aAlpha, float aWeight)
+	{
+		return Math.round(aAlpha * Math.max(0f, Math.min(aWeight, 1f)));
+	}
+}
@@ -0,0 +1,82 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Parameters of a shadow for ShadowViewDecorator.dropShadow(View, ShadowSpec) and ShadowBatch.
+ * Create it with layers, boxBlur or gaussianBlur, the parameters are the same as of the matching dropShadow methods.
+ */
+public class ShadowSpec {
+
+	public static final int ALGORITHM_LAYERS = 1;
+	public static final int ALGORITHM_BOX_BLUR = 2;
+	public static final int ALGORITHM_GAUSSIAN_BLUR = 3;
+
+	public final int algorithm;
+	public final int shadowSize;
+	public final int shadowLayersCount;
+	public final int shadowColor;
+	public final int alphaInit;
+	public final int alphaStep;
+	public final int offsetLeft;
+	public final int offsetTop;
+	public final boolean isExpand;
+	public final ChangeMargins changeMargins;
+	public final BlurBackend blurBackend;
+
+	private ShadowSpec(int aAlgorithm, int aShadowSize, int aShadowLayersCount, int aShadowColor, int aAlphaInit, int aAlphaStep,
+			int aOffsetLeft, int aOffsetTop, boolean aIsExpand, ChangeMargins aChangeMargins, BlurBackend aBlurBackend)
+	{
+		super();
+		algorithm = aAlgorithm;
+		shadowSize = aShadowSize;
+		shadowLayersCount = aShadowLayersCount;
+		shadowColor = aShadowColor;
+		alphaInit = aAlphaInit;
+		alphaStep = aAlphaStep;
+		offsetLeft = aOffsetLeft;
+		offsetTop = aOffsetTop;
+		isExpand = aIsExpand;
+		changeMargins = aChangeMargins;
+		blurBackend = aBlurBackend;
+	}
+
+	/**
+	 * Layered shadow, same as ShadowViewDecorator.dropShadow.
+	 * @return ShadowSpec - the spec.
+	 */
+	public static ShadowSpec layers(int aShadowSize, int aShadowLayersCount, int aShadowColor, int aAlphaInit, int aAlphaStep,
+			int aOffsetLeft, int aOffsetTop, boolean aIsExpand, ChangeMargins aChangeMargins)
+	{
+		return new ShadowSpec(ALGORITHM_LAYERS, aShadowSize, aShadowLayersCount, aShadowColor, aAlphaInit, aAlphaStep,
+				aOffsetLeft, aOffsetTop, aIsExpand, aChangeMargins, null);
+	}
+
+	/**
+	 * Box blurred shadow, same as ShadowViewDecorator.dropShadowBoxBlur.
+	 * @return ShadowSpec - the spec.
+	 */
+	public static ShadowSpec boxBlur(int aShadowSize, int aShadowColor, int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
+	{
+		return new ShadowSpec(ALGORITHM_BOX_BLUR, aShadowSize, 0, aShadowColor, 0, 0, aOffsetLeft, aOffsetTop, aIsExpand, null, null);
+	}
+
+	/**
+	 * Gaussian blurred shadow with the blur backend of the decorator, same as ShadowViewDecorator.dropShadowGaussianBlur.
+	 * @return ShadowSpec - the spec.
+	 */
+	public static ShadowSpec gaussianBlur(int aShadowSize, int aShadowColor, int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
+	{
+		return gaussianBlur(aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand, null);
+	}
+
+	/**
+	 * Gaussian blurred shadow with the passed in blur backend.
+	 * @param aBlurBackend - backend which blurs the shadow mask, null for the backend of the decorator.
+	 * @return ShadowSpec - the spec.
+	 */
+	public static ShadowSpec gaussianBlur(int aShadowSize, int aShadowColor, int aOffsetLeft, int aOffsetTop, boolean aIsExpand,
+			BlurBackend aBlurBackend)
+	{
+		return new ShadowSpec(ALGORITHM_GAUSSIAN_BLUR, aShadowSize, 0, aShadowColor, 0, 0, aOffsetLeft, aOffsetTop, aIsExpand, null,
+				aBlurBackend);
+	}
+}
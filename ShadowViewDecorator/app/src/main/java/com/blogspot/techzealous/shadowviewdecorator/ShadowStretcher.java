@@ -0,0 +1,118 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.Arrays;
+
+/**
+ * Resizes a rendered shadow without rendering it again, for shapes which only stretch in the middle, like rectangles,
+ * rounded rectangles and nine patch backgrounds. The widest band of identical columns (and rows) is found,
+ * everything outside of it, the blurred corners and edges, is copied and the band is repeated to the new size.
+ * The pixels are opaque ints, any packing of the channels works as long as it is the same for all pixels.
+ */
+public class ShadowStretcher {
+
+	private ShadowStretcher() {}
+
+	/**
+	 * @param aPixels - pixels in row major order.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @return int[] - start and end (exclusive) of the widest band of identical columns, a single column if there is none.
+	 */
+	public static int[] findUniformColumns(int[] aPixels, int aWidth, int aHeight)
+	{
+		boolean[] isSame = new boolean[Math.max(aWidth - 1, 0)];
+		Arrays.fill(isSame, true);
+		for(int y = 0; y < aHeight; y++) {
+			int offset = y * aWidth;
+			for(int x = 0; x < aWidth - 1; x++) {
+				if(isSame[x] && aPixels[offset + x] != aPixels[offset + x + 1]) {isSame[x] = false;}
+			}
+		}
+		return widestRun(isSame, aWidth);
+	}
+
+	/**
+	 * @param aPixels - pixels in row major order.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @return int[] - start and end (exclusive) of the widest band of identical rows, a single row if there is none.
+	 */
+	public static int[] findUniformRows(int[] aPixels, int aWidth, int aHeight)
+	{
+		boolean[] isSame = new boolean[Math.max(aHeight - 1, 0)];
+		for(int y = 0; y < aHeight - 1; y++) {
+			int offset = y * aWidth;
+			isSame[y] = true;
+			for(int x = 0; x < aWidth; x++) {
+				if(aPixels[offset + x] != aPixels[offset + aWidth + x]) {
+					isSame[y] = false;
+					break;
+				}
+			}
+		}
+		return widestRun(isSame, aHeight);
+	}
+
+	/**
+	 * @param aBand - band from findUniformColumns or findUniformRows.
+	 * @param aSize - current width or height.
+	 * @param aNewSize - new width or height.
+	 * @return boolean - true if the size can change by stretching the band, it shrinks at most to a single column or row.
+	 */
+	public static boolean canStretch(int[] aBand, int aSize, int aNewSize)
+	{
+		if(aNewSize == aSize) {return true;}
+		return aBand[1] - aBand[0] > 1 && aNewSize >= aSize - (aBand[1] - aBand[0] - 1);
+	}
+
+	/**
+	 * @param aPixels - pixels in row major order.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @param aColumns - band of identical columns, checked with canStretch.
+	 * @param aRows - band of identical rows, checked with canStretch.
+	 * @param aNewWidth - width of the stretched image.
+	 * @param aNewHeight - height of the stretched image.
+	 * @return int[] - pixels of the stretched image.
+	 */
+	public static int[] stretch(int[] aPixels, int aWidth, int aHeight, int[] aColumns, int[] aRows, int aNewWidth, int aNewHeight)
+	{
+		int[] pixels = new int[aNewWidth * aNewHeight];
+		int leftCount = aColumns[0] + 1;
+		int middleCount = (aColumns[1] - aColumns[0] - 1) + (aNewWidth - aWidth);
+		int rightCount = aNewWidth - leftCount - middleCount;
+		int rowsMiddleCount = (aRows[1] - aRows[0]) + (aNewHeight - aHeight);
+
+		for(int y = 0; y < aNewHeight; y++) {
+			int sourceY = y;
+			if(y >= aRows[0] + rowsMiddleCount) {
+				sourceY = y - (aNewHeight - aHeight);
+			} else if(y >= aRows[0]) {
+				sourceY = aRows[0];
+			}
+			int sourceOffset = sourceY * aWidth;
+			int offset = y * aNewWidth;
+
+			System.arraycopy(aPixels, sourceOffset, pixels, offset, leftCount);
+			Arrays.fill(pixels, offset + leftCount, offset + leftCount + middleCount, aPixels[sourceOffset + aColumns[0]]);
+			System.arraycopy(aPixels, sourceOffset + aWidth - rightCount, pixels, offset + leftCount + middleCount, rightCount);
+		}
+		return pixels;
+	}
+
+	private static int[] widestRun(boolean[] aIsSame, int aSize)
+	{
+		int bestStart = aSize / 2;
+		int bestCount = 0;
+		int start = 0;
+		for(int x = 0; x <= aIsSame.length; x++) {
+			if(x < aIsSame.length && aIsSame[x]) {continue;}
+			if(x - start > bestCount) {
+				bestStart = start;
+				bestCount = x - start;
+			}
+			start = x + 1;
+		}
+		return new int[]{bestStart, bestStart + bestCount + 1};
+	}
+}
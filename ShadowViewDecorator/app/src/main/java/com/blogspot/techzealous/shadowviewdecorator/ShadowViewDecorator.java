@@ -3,42 +3,336 @@ package com.blogspot.techzealous.shadowviewdecorator;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.v8.renderscript.Allocation;
 import android.support.v8.renderscript.Element;
 import android.support.v8.renderscript.RenderScript;
 import android.support.v8.renderscript.ScriptIntrinsicBlur;
+import android.support.v8.renderscript.Type;
 import android.view.View;
 import android.view.ViewGroup;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class ShadowViewDecorator {
 
 	private static final String LOG = "ShadowViewDecorator";
 	private static final String STR_METHOD_setElevation = "setElevation";
 	private static final int kSDK_LEVEL_LOLLIPOP = 21;
+	private static final int kALGORITHM_LAYERS = ShadowSpec.ALGORITHM_LAYERS;
+	private static final int kALGORITHM_BOX_BLUR = ShadowSpec.ALGORITHM_BOX_BLUR;
+	private static final int kALGORITHM_GAUSSIAN_BLUR = ShadowSpec.ALGORITHM_GAUSSIAN_BLUR;
+	private static final int kALGORITHM_NINE_PATCH = 4;
+	private static final int kALGORITHM_ANALYTIC = 5;
+	private static final int kALGORITHM_DISTANCE_FIELD = 6;
+	private static final int kALGORITHM_PYRAMID = 7;
+	private static final int kALGORITHM_LAZY = 8;
+	private static final int kALGORITHM_PREBAKED = 9;
+	private static final int kSHAPE_ROUND_RECT = 1;
+	private static final int kSHAPE_CIRCLE = 2;
+	private static final int kFRAME_BUDGET_MILLIS = 4;
 
 	private WeakReference<Context> mWeakCtx;
 	private Handler mHandler;
+	private FrameApplier mFrameApplier;
 	private ExecutorService mExecutor;
-
+	private boolean mIsExecutorOwned;
+	private BlurBackend mBlurBackend;
+	private BlurBackend mBoxBlurBackend;
+	private StripeRunner mStripeRunner;
+	private boolean mIsDownsampleBlur;
+	private boolean mIsResizeAware;
+	private ShadowCache mShadowCache;
+	private DiskShadowCache mDiskCache;
+	private BitmapPool mBitmapPool;
+	private DistanceFieldCache mDistanceFieldCache;
+	private ShadowMetricsListener mMetricsListener;
+	private MemoryGovernor mMemoryGovernor;
+	private final WeakHashMap<View, CancellationToken> mViewJobs = new WeakHashMap<View, CancellationToken>();
+	private final WeakHashMap<View, ResizeListener> mResizeListeners = new WeakHashMap<View, ResizeListener>();
+
+	/**
+	 * Creates a decorator which renders the shadows on its own background priority thread.
+	 * @param aCtx - context.
+	 */
 	public ShadowViewDecorator(Context aCtx)
+	{
+		this(aCtx, new PriorityExecutor());
+		mIsExecutorOwned = true;
+	}
+
+	/**
+	 * Creates a decorator which renders the shadows on the passed in executor. With a PriorityExecutor
+	 * the shadows of views on screen are rendered before the shadows of views which are not.
+	 * The executor is not shut down by release.
+	 * @param aCtx - context.
+	 * @param aExecutor - executor for the decoration jobs, for example new PriorityExecutor(2, Process.THREAD_PRIORITY_BACKGROUND).
+	 */
+	public ShadowViewDecorator(Context aCtx, ExecutorService aExecutor)
 	{
 		mWeakCtx = new WeakReference<Context>(aCtx);
 		mHandler = new Handler(Looper.getMainLooper());
-		mExecutor = Executors.newSingleThreadExecutor();
+		mFrameApplier = new FrameApplier(mHandler, kFRAME_BUDGET_MILLIS);
+		mExecutor = aExecutor;
+		mStripeRunner = new StripeRunner();
+		mBlurBackend = new RenderScriptBlurBackend(aCtx, mStripeRunner);
+		mBoxBlurBackend = new BoxBlurBackend(mStripeRunner);
+		mShadowCache = new ShadowCache(ShadowCache.defaultMaxBytes());
+		mBitmapPool = new BitmapPool(BitmapPool.defaultMaxBytes());
+		mDistanceFieldCache = new DistanceFieldCache(DistanceFieldCache.defaultMaxBytes());
+		mMemoryGovernor = new MemoryGovernor(MemoryGovernor.defaultBudgetBytes());
+	}
+
+	/**
+	 * Frees the RenderScript context and the other native resources of the blur backends, clears the shadow cache
+	 * and recycles the pooled bitmaps. Shuts down the executor if the decorator created it, pending jobs are cancelled.
+	 * Call it when the decorator is no longer needed, for example in onDestroy of the activity.
+	 * @return void.
+	 */
+	public void release()
+	{
+		if(mIsExecutorOwned) {mExecutor.shutdownNow();}
+		mBlurBackend.release();
+		mBoxBlurBackend.release();
+		if(mShadowCache != null) {mShadowCache.clear();}
+		if(mBitmapPool != null) {mBitmapPool.clear();}
+		if(mDistanceFieldCache != null) {mDistanceFieldCache.clear();}
+	}
+
+	/**
+	 * Cancels the pending or running decoration of the view. A pending job is dropped before it starts,
+	 * a running job stops at the next stripe of the blur and its shadow is not set.
+	 * Decorating a view again cancels its previous decoration the same way.
+	 * @param aView - view whose decoration to cancel.
+	 * @return void.
+	 */
+	public void cancel(View aView)
+	{
+		synchronized(mViewJobs) {
+			CancellationToken token = mViewJobs.remove(aView);
+			if(token != null) {token.cancel();}
+		}
+	}
+
+	/**
+	 * Shadows are set on the views at the start of a frame, together with the other shadows finished since the last frame.
+	 * When setting them takes longer than the budget, the rest is set in the next frame.
+	 * @param aBudgetMillis - main thread time per frame for setting shadows, default is 4 ms.
+	 * @return void.
+	 */
+	public void setFrameBudget(int aBudgetMillis)
+	{
+		mFrameApplier.setBudgetMillis(aBudgetMillis);
+	}
+
+	/**
+	 * @return ShadowCache - cache of the generated shadows, or null if caching is off.
+	 */
+	public ShadowCache getShadowCache()
+	{
+		return mShadowCache;
+	}
+
+	/**
+	 * Sets the cache for generated shadows. Decorating a view whose background, size and shadow parameters
+	 * are already in the cache sets the cached shadow without going through the executor.
+	 * Blurred masks are also cached by their content, so different backgrounds with the same shape share the blur.
+	 * Backgrounds which share their constant state with other drawables should be mutated before they are changed,
+	 * see ShadowKey.forDrawable.
+	 * @param aShadowCache - cache to use, null to turn caching off.
+	 * @return void.
+	 */
+	public void setShadowCache(ShadowCache aShadowCache)
+	{
+		mShadowCache = aShadowCache;
+	}
+
+	/**
+	 * @return DiskShadowCache - disk tier of the shadow cache, or null if it is off.
+	 */
+	public DiskShadowCache getDiskCache()
+	{
+		return mDiskCache;
+	}
+
+	/**
+	 * Sets a disk tier below the shadow cache. The blurred masks, which are cached by their content, are also written to disk
+	 * and read back after the process restarts instead of being blurred again. Off by default.
+	 * @param aDiskCache - cache to use, for example new DiskShadowCache(new File(getCacheDir(), "shadows"), 16 * 1024 * 1024),
+	 * null to turn it off.
+	 * @return void.
+	 */
+	public void setDiskCache(DiskShadowCache aDiskCache)
+	{
+		mDiskCache = aDiskCache;
+	}
+
+	/**
+	 * @return BitmapPool - pool of the intermediate bitmaps, or null if pooling is off.
+	 */
+	public BitmapPool getBitmapPool()
+	{
+		return mBitmapPool;
+	}
+
+	/**
+	 * Sets the pool for the intermediate bitmaps: the copy of the background, the shadow masks and the downsampled masks.
+	 * They are taken from the pool while a shadow is created and put back once it is composed.
+	 * @param aBitmapPool - pool to use, null to create and recycle the intermediate bitmaps every time.
+	 * @return void.
+	 */
+	public void setBitmapPool(BitmapPool aBitmapPool)
+	{
+		mBitmapPool = aBitmapPool;
+	}
+
+	/**
+	 * @return DistanceFieldCache - cache of the distance fields of the backgrounds, or null if caching is off.
+	 */
+	public DistanceFieldCache getDistanceFieldCache()
+	{
+		return mDistanceFieldCache;
+	}
+
+	/**
+	 * Sets the cache for the distance fields used by dropShadowDistanceField. A view whose background and size
+	 * have a cached field gets a shadow with a new radius, spread or offset without drawing the background again.
+	 * @param aDistanceFieldCache - cache to use, null to compute the field every time.
+	 * @return void.
+	 */
+	public void setDistanceFieldCache(DistanceFieldCache aDistanceFieldCache)
+	{
+		mDistanceFieldCache = aDistanceFieldCache;
+	}
+
+	/**
+	 * Keeps the shadows set with dropShadow, dropShadowBoxBlur, dropShadowGaussianBlur, boxShadow and dropShadowBatch
+	 * in step with the size of their views. A layout listener is installed on each decorated view, when the view changes size
+	 * the shadow is stretched by repeating its uniform middle columns and rows, keeping the blurred corners and edges.
+	 * If the shadow has no such band, for example because the background has a gradient, it is rendered again
+	 * from the original background. Views whose own padding or margins change with the shadow should keep this off.
+	 * A wrap_content view takes the size of the shadow bitmap on the layout after the shadow is set, a view taking
+	 * the width or height of its shadow is not followed, so the shadow does not grow with its own size.
+	 * @param aIsResizeAware - true to follow size changes of the decorated views.
+	 * @return void.
+	 */
+	public void setResizeAware(boolean aIsResizeAware)
+	{
+		mIsResizeAware = aIsResizeAware;
+	}
+
+	/**
+	 * Blurs large shadows on several threads. The horizontal pass is split in stripes of rows
+	 * and the vertical pass in stripes of columns. Applies to the box blur shadows and to the default Gaussian backends.
+	 * @param aExecutor - executor for the stripes, for example Executors.newFixedThreadPool(cores). Null to blur on one thread.
+	 * @param aMinPixels - shadows with less pixels than this are blurred on one thread.
+	 * @return void.
+	 */
+	public void setParallelBlur(ExecutorService aExecutor, int aMinPixels)
+	{
+		mStripeRunner.setExecutor(aExecutor, Runtime.getRuntime().availableProcessors(), aMinPixels);
+	}
+
+	/**
+	 * Blurs large shadows at a lower resolution. The mask is shrunk 2x, 4x or 8x depending on the radius,
+	 * blurred with a smaller radius and scaled back up with bilinear filtering when drawn.
+	 * Applies to the box blur and Gaussian blur shadows, small radii are always blurred at full size.
+	 * @param aIsDownsampleBlur - true to blur large radii at a lower resolution.
+	 * @return void.
+	 */
+	public void setDownsampleBlur(boolean aIsDownsampleBlur)
+	{
+		mIsDownsampleBlur = aIsDownsampleBlur;
+	}
+
+	/**
+	 * @return StripeRunner - runner configured with setParallelBlur, to pass to a BoxGaussianBlurBackend.
+	 */
+	public StripeRunner getStripeRunner()
+	{
+		return mStripeRunner;
+	}
+
+	/**
+	 * @return BlurBackend - backend used by the Gaussian blur methods when none is passed in.
+	 */
+	public BlurBackend getBlurBackend()
+	{
+		return mBlurBackend;
+	}
+
+	/**
+	 * Sets the backend used by the Gaussian blur methods when none is passed in.
+	 * Default is RenderScriptBlurBackend, BoxGaussianBlurBackend works without RenderScript and has no radius limit.
+	 * @param aBlurBackend - backend to use.
+	 * @return void.
+	 */
+	public void setBlurBackend(BlurBackend aBlurBackend)
+	{
+		mBlurBackend = aBlurBackend;
+	}
+
+	/**
+	 * @return ShadowMetricsListener - listener of the request metrics, or null if metrics are off.
+	 */
+	public ShadowMetricsListener getMetricsListener()
+	{
+		return mMetricsListener;
+	}
+
+	/**
+	 * Records the metrics of each shadow request: the time spent waiting in the queue, rasterizing the background,
+	 * extracting its alpha, blurring, composing and setting the shadow on the main thread, the bytes of the created bitmaps
+	 * and the shadow cache lookups. The stages are also Trace sections on Android 4.3+. Off by default,
+	 * when off nothing is measured or traced.
+	 * @param aMetricsListener - listener called on the main thread after each shadow is set, for example
+	 * a ShadowMetricsHistogram for p50, p95 and p99 of the stages. Null to turn metrics off.
+	 * @return void.
+	 */
+	public void setMetricsListener(ShadowMetricsListener aMetricsListener)
+	{
+		mMetricsListener = aMetricsListener;
+	}
+
+	/**
+	 * @return MemoryGovernor - governor of the memory of the running jobs, or null if it is off.
+	 */
+	public MemoryGovernor getMemoryGovernor()
+	{
+		return mMemoryGovernor;
+	}
+
+	/**
+	 * Sets the governor which bounds the peak bytes of the running shadow jobs of dropShadow, dropShadowBoxBlur,
+	 * dropShadowGaussianBlur, the boxShadow methods and dropShadowBatch. A job whose full quality shadow does not fit
+	 * in the rest of the budget blurs a downsampled mask instead, as with setDownsampleBlur, and such a shadow is not cached.
+	 * A job which does not fit even so waits for the other jobs. Default is a governor with 1/8 of the maximum heap size.
+	 * @param aMemoryGovernor - governor to use, it may be shared with other decorators. Null to turn it off.
+	 * @return void.
+	 */
+	public void setMemoryGovernor(MemoryGovernor aMemoryGovernor)
+	{
+		mMemoryGovernor = aMemoryGovernor;
 	}
 
     /**
@@ -51,12 +345,12 @@ public class ShadowViewDecorator {
      * @param aColor - shadow color.
 	 * @param aAlphaInitial - alpha value for the shadow. How intesive is the shadow.
      * @param aAlphaStep - alpha value to be added to shadow with each shadow layer. How the shadow fades.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-    public void boxShadow(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor,
+    public Future<?> boxShadow(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor,
 			int aAlphaInitial, int aAlphaStep)
     {
-        dropShadow(aView, aBlur + aSpread, ((aBlur == 0) ? 1 : aBlur), aColor, aAlphaInitial, aAlphaStep,
+        return dropShadow(aView, aBlur + aSpread, ((aBlur == 0) ? 1 : aBlur), aColor, aAlphaInitial, aAlphaStep,
                 aHorizontalShadow, aVerticalShadow, true, null);
     }
 
@@ -68,11 +362,11 @@ public class ShadowViewDecorator {
      * @param aBlur - blur radius.
      * @param aSpread - a spread radius.
      * @param aColor - shadow color.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-    public void boxShadowBoxBlur(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor)
+    public Future<?> boxShadowBoxBlur(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor)
     {
-        dropShadowBoxBlur(aView, aBlur + aSpread, aColor, aHorizontalShadow, aVerticalShadow, true);
+        return dropShadowBoxBlur(aView, aBlur + aSpread, aColor, aHorizontalShadow, aVerticalShadow, true);
     }
 
     /**
@@ -84,12 +378,12 @@ public class ShadowViewDecorator {
      * @param aBlur - blur radius.
      * @param aSpread - a spread radius.
      * @param aColor - shadow color.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-    public void boxShadowGaussianBlur(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor)
+    public Future<?> boxShadowGaussianBlur(View aView, int aHorizontalShadow, int aVerticalShadow, int aBlur, int aSpread, int aColor)
     {
         if(aSpread < 0) {aSpread = 0;}
-        dropShadowGaussianBlur(aView, aBlur + aSpread, aColor, aHorizontalShadow, aVerticalShadow, true);
+        return dropShadowGaussianBlur(aView, aBlur + aSpread, aColor, aHorizontalShadow, aVerticalShadow, true);
     }
 
     /**
@@ -121,81 +415,14 @@ public class ShadowViewDecorator {
      * @param aOffsetTop - offset of the shadow from top.
      * @param aIsExpand - if the view should expand with the size of the shadow or if the view should keep it's size.
      * @param aChangeMargins - which margins of the view to change or null if none should be changed.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-	public void dropShadow(final View aView, final int aShadowSize, final int aShadowLayersCount, final int aShadowColor,
-            final int aAlphaInit, final int aAlphaStep, final int aOffsetLeft, final int aOffsetTop,
-            final boolean aIsExpand, final ChangeMargins aChangeMargins)
-	{
-		mExecutor.execute(new Runnable() {
-			@Override
-			public void run() {
-                int offsetLeft = Math.abs(aOffsetLeft);
-                int offsetTop = Math.abs(aOffsetTop);
-                Bitmap bitmapCurrent = convertToBitmap(aView.getBackground(), aView.getWidth(), aView.getHeight());
-                int bitmapCurrentWidth = bitmapCurrent.getWidth();
-                int bitmapCurrentHeight = bitmapCurrent.getHeight();
-
-                Bitmap bitmapAlpha = bitmapCurrent.extractAlpha();
-                Bitmap bitmapTemp = null;
-                Rect rectSrc = new Rect(0, 0, bitmapCurrentWidth, bitmapCurrentHeight);
-                Rect rectDest = null;
-                if(aIsExpand) {
-                    rectDest = new Rect(offsetLeft, offsetTop, bitmapCurrentWidth + (aShadowSize * 2) + offsetLeft,
-                            bitmapCurrentHeight + (aShadowSize * 2) + offsetTop);
-                    bitmapTemp = Bitmap.createBitmap(bitmapCurrentWidth + (aShadowSize * 2) + (offsetLeft * 2),
-                            bitmapCurrentHeight + (aShadowSize * 2) + (offsetTop * 2), Config.ARGB_8888);
-                } else {
-                    rectDest = new Rect(offsetLeft, offsetTop, bitmapCurrentWidth + offsetLeft, bitmapCurrentHeight + offsetTop);
-                    bitmapTemp = Bitmap.createBitmap(bitmapCurrentWidth + (offsetLeft * 2),
-                            bitmapCurrentHeight + (offsetTop * 2), Config.ARGB_8888);
-                }
-                final Bitmap bitmap = bitmapTemp;
-
-                Paint paint = new Paint();
-                paint.setColor(aShadowColor);
-                paint.setAlpha(aAlphaInit);
-                Canvas canvas = new Canvas(bitmap);
-
-                int add = aShadowSize / ((aShadowLayersCount == 0) ? 1 : aShadowLayersCount);
-                for(int x = 0; x < aShadowLayersCount; x++) {
-                    canvas.drawBitmap(bitmapAlpha, rectSrc, rectDest, paint);
-                    int alpha = paint.getAlpha() + aAlphaStep;
-                    if(alpha > 255) {alpha = 255;}
-                    paint.setAlpha(alpha);
-                    rectDest.set(rectDest.left + add, rectDest.top + add, rectDest.right - add, rectDest.bottom - add);
-                }
-                if(aIsExpand) {
-                    rectDest.set(aShadowSize, aShadowSize, bitmapCurrentWidth + aShadowSize, bitmapCurrentHeight + aShadowSize);
-                } else {
-                    rectDest.set(aShadowSize, aShadowSize, bitmapCurrentWidth - aShadowSize, bitmapCurrentHeight - aShadowSize);
-                }
-                canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
-
-				mHandler.post(new Runnable() {
-					@Override
-					public void run() {
-						Context ctx = mWeakCtx.get();
-						if(ctx == null) {return;}
-
-                        aView.setPadding(-aOffsetLeft, -aOffsetTop, aView.getPaddingRight(), aView.getPaddingBottom());
-						aView.setBackgroundDrawable(new BitmapDrawable(ctx.getResources(), bitmap));
-
-                        if(aChangeMargins != null) {
-                            ViewGroup.MarginLayoutParams params = (ViewGroup.MarginLayoutParams) aView.getLayoutParams();
-//						    if(aChangeMargins.changeLeft) {params.rightMargin = params.rightMargin - aShadowSize;}
-//						    if(aChangeMargins.changeTop) {params.topMargin = params.topMargin - aShadowSize;}
-//						    if(aChangeMargins.changeRight) {params.rightMargin = params.rightMargin - aShadowSize;}
-//						    if(aChangeMargins.changeBottom) {params.bottomMargin = params.bottomMargin - aShadowSize;}
-                            params.setMargins((aChangeMargins.changeLeft) ? params.leftMargin - aShadowSize : params.leftMargin,
-                                    (aChangeMargins.changeTop) ? params.topMargin - aShadowSize : params.topMargin,
-                                    (aChangeMargins.changeRight) ? params.rightMargin - aShadowSize : params.rightMargin,
-                                    (aChangeMargins.changeBottom) ? params.bottomMargin - aShadowSize : params.bottomMargin);
-                        }
-					}
-				});
-			}
-		});
+	public Future<?> dropShadow(View aView, int aShadowSize, int aShadowLayersCount, int aShadowColor,
+            int aAlphaInit, int aAlphaStep, int aOffsetLeft, int aOffsetTop,
+            boolean aIsExpand, ChangeMargins aChangeMargins)
+	{
+        return dropShadow(aView, ShadowSpec.layers(aShadowSize, aShadowLayersCount, aShadowColor, aAlphaInit, aAlphaStep,
+                aOffsetLeft, aOffsetTop, aIsExpand, aChangeMargins));
 	}
 
     /**
@@ -203,224 +430,527 @@ public class ShadowViewDecorator {
      * @param aView - view which to decorate with a shadow.
      * @param aShadowSize - size of the shadow in pixels.
      * @param aShadowColor - color of the shadow.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+	public Future<?> dropShadowBoxBlur(View aView, int aShadowSize, int aShadowColor,
+            int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
+	{
+        return dropShadow(aView, ShadowSpec.boxBlur(aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand));
+	}
+
+    /**
+     * Drops offset shadow using GaussianBlur with Renderscript.
+     * @param aView - view which to decorate with a shadow.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetLeft - offset from left.
+     * @param aOffsetTop - offset from top.
+     * @param aIsExpand - if the view should expand with the size of the shadow or if it should keep it's size.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+	public Future<?> dropShadowGaussianBlur(View aView, int aShadowSize, int aShadowColor,
+            int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
+	{
+        return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand, mBlurBackend);
+	}
+
+    /**
+     * Drops offset shadow using GaussianBlur with the passed in blur backend.
+     * @param aView - view which to decorate with a shadow.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetLeft - offset from left.
+     * @param aOffsetTop - offset from top.
+     * @param aIsExpand - if the view should expand with the size of the shadow or if it should keep it's size.
+     * @param aBlurBackend - backend which blurs the shadow mask.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-	public void dropShadowBoxBlur(final View aView, final int aShadowSize, final int aShadowColor,
-            final int aOffsetLeft, final int aOffsetTop, final boolean aIsExpand)
+	public Future<?> dropShadowGaussianBlur(View aView, int aShadowSize, int aShadowColor,
+            int aOffsetLeft, int aOffsetTop, boolean aIsExpand, BlurBackend aBlurBackend)
 	{
+        return dropShadow(aView, ShadowSpec.gaussianBlur(aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand, aBlurBackend));
+	}
+
+    /**
+     * Drops the shadow described by the spec around the passed in view.
+     * @param aView - view which to decorate with a shadow.
+     * @param aSpec - the shadow.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+    public Future<?> dropShadow(final View aView, final ShadowSpec aSpec)
+    {
+        final ShadowKey key = createShadowKey(aView, aSpec);
         final int viewWidth = aView.getWidth();
         final int viewHeight = aView.getHeight();
-        mExecutor.execute(new Runnable() {
+        ShadowMetrics metrics = createMetrics("dropShadow");
+        Bitmap bitmapCached = getCachedShadow(key, metrics);
+        if(bitmapCached != null) {
+            cancel(aView);
+            mFrameApplier.post(withMetrics(metrics, createApply(aView, bitmapCached, aSpec, viewWidth, viewHeight)));
+            return doneFuture();
+        }
+
+        return submitJob(aView, metrics, new Runnable() {
             @Override
             public void run() {
-                float kernel = 1.0f / ((aShadowSize * 2) + 1);
-                Bitmap bitmapCurrent = convertToBitmap(aView.getBackground(), viewWidth, viewHeight);
-                Bitmap bitmapAlpha = bitmapCurrent.extractAlpha();
-                Bitmap bitmapTemp = null;
-                int offsetLeft = Math.abs(aOffsetLeft);
-                int offsetTop = Math.abs(aOffsetTop);
-
-                Rect rectSrc = new Rect(0, 0, bitmapCurrent.getWidth(), bitmapCurrent.getHeight());
-                Rect rectDest = null;
-                if(aIsExpand) {
-                    rectDest = new Rect(aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop, bitmapCurrent.getWidth() + aShadowSize + aOffsetLeft,
-                            bitmapCurrent.getHeight() + aShadowSize + aOffsetTop);
-                    bitmapTemp = Bitmap.createBitmap(bitmapCurrent.getWidth() + (aShadowSize * 2) + (offsetLeft * 2),
-                            bitmapCurrent.getHeight() + (aShadowSize * 2) + (offsetTop * 2), Config.ARGB_8888);
-                } else {
-                    rectDest = new Rect(aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop,
-                            bitmapCurrent.getWidth() - aShadowSize + aOffsetLeft, bitmapCurrent.getHeight() - aShadowSize + aOffsetTop);
-                    bitmapTemp = Bitmap.createBitmap(bitmapCurrent.getWidth() + (offsetLeft * 2),
-                            bitmapCurrent.getHeight() + (offsetTop * 2), Config.ARGB_8888);
-                }
-                final Bitmap bitmap = bitmapTemp;
-
-                Paint paint = new Paint();
-                paint.setColor(aShadowColor);
-                Canvas canvas = new Canvas(bitmap);
-                canvas.drawBitmap(bitmapAlpha, rectSrc, rectDest, paint);
-                bitmapAlpha.recycle();
-
-				/*
-				 * Box blur
-				 * If we didn't have to support different shadow colors we would be using only one color and won't have to multiply them all.
-				 * example we use only red: bitmap.setPixel(col, row, Color.argb((int)sumAlpha, (int)sumRed, (int)sumRed, (int)sumRed));
-				 */
-                int colsCount = bitmap.getWidth();
-                int rowsCount = bitmap.getHeight();
-
-                for(int row = 0; row < rowsCount; row++) {
-                    for(int col = 0; col < colsCount; col++) {
-                        float sumAlpha = 0;
-                        float sumRed = 0;
-                        float sumGreen = 0;
-                        float sumBlue = 0;
-                        for(int k = col - aShadowSize; k <= col + aShadowSize; k++) {
-                            int pixel = 0;
-                            if(k < 0) {
-                                pixel = Color.argb(0, 255, 255, 255);
-                            } else if(k >= colsCount) {
-                                pixel = Color.argb(0, 255, 255, 255);
-                            } else {
-                                pixel = bitmap.getPixel(k, row);
-                            }
-
-                            int alpha = Color.alpha(pixel);
-                            int red = Color.red(pixel);
-                            int green = Color.green(pixel);
-                            int blue = Color.blue(pixel);
-
-                            float resultAlpha = (float)alpha * kernel;
-                            float resultRed = (float)red * kernel;
-                            float resultGreen = (float)green * kernel;
-                            float resultBlue = (float)blue * kernel;
-
-                            sumAlpha += resultAlpha;
-                            sumRed += resultRed;
-                            sumGreen += resultGreen;
-                            sumBlue += resultBlue;
-                        }
-                        bitmap.setPixel(col, row, Color.argb((int)sumAlpha, (int)sumRed, (int)sumGreen, (int)sumBlue));
-                    }
-                }
+                Bitmap bitmap = renderShadow(aView.getBackground(), aSpec, viewWidth, viewHeight, key);
+                if(bitmap == null) {return;}
+                mFrameApplier.post(withMetrics(createApply(aView, bitmap, aSpec, viewWidth, viewHeight)));
+            }
+        });
+    }
 
-                for(int col = 0; col < colsCount; col++) {
-                    for(int row = 0; row < rowsCount; row++) {
-                        float sumAlpha = 0;
-                        float sumRed = 0;
-                        float sumGreen = 0;
-                        float sumBlue = 0;
-                        for(int k = row - aShadowSize; k <= row + aShadowSize; k++) {
-                            int pixel = 0;
-                            if(k < 0) {
-                                pixel = Color.argb(0, 255, 255, 255);
-                            } else if(k >= rowsCount) {
-                                pixel = Color.argb(0, 255, 255, 255);
-                            } else {
-                                pixel = bitmap.getPixel(col, k);
-                            }
-
-                            int alpha = Color.alpha(pixel);
-                            int red = Color.red(pixel);
-                            int green = Color.green(pixel);
-                            int blue = Color.blue(pixel);
-
-                            float resultAlpha = (float)alpha * kernel;
-                            float resultRed = (float)red * kernel;
-                            float resultGreen = (float)green * kernel;
-                            float resultBlue = (float)blue * kernel;
-
-                            sumAlpha += resultAlpha;
-                            sumRed += resultRed;
-                            sumGreen += resultGreen;
-                            sumBlue += resultBlue;
-                        }
-                        bitmap.setPixel(col, row, Color.argb((int)sumAlpha, (int)sumRed, (int)sumGreen, (int)sumBlue));
+    /**
+     * Drops the shadows of all views of the batch. The shadows are rendered one after another in a single job,
+     * reusing the pooled intermediate bitmaps, and set on the views together in one main thread pass at the start of a frame.
+     * Cached shadows are queued right away, in the next pass, without waiting for the job.
+     * If setting them takes longer than the frame budget, the rest is set in the next frames.
+     * Each view of the batch supersedes its previous decoration as with the single view methods.
+     * @param aBatch - views and their shadows.
+     * @return Future - handle of the job which can be cancelled, already done if all shadows were cached.
+     */
+    public Future<?> dropShadowBatch(ShadowBatch aBatch)
+    {
+        final int count = aBatch.size();
+        final View[] views = new View[count];
+        final ShadowSpec[] specs = new ShadowSpec[count];
+        final ShadowKey[] keys = new ShadowKey[count];
+        final ShadowMetrics[] metrics = new ShadowMetrics[count];
+        final int[] sizes = new int[count * 2];
+        final List<Runnable> appliesCached = new ArrayList<Runnable>(count);
+        final List<Integer> pending = new ArrayList<Integer>(count);
+        boolean isVisible = false;
+        for(int x = 0; x < count; x++) {
+            views[x] = aBatch.getView(x);
+            specs[x] = aBatch.getSpec(x);
+            keys[x] = createShadowKey(views[x], specs[x]);
+            metrics[x] = createMetrics("dropShadowBatch");
+            Bitmap bitmapCached = getCachedShadow(keys[x], metrics[x]);
+            if(bitmapCached != null) {
+                cancel(views[x]);
+                appliesCached.add(withMetrics(metrics[x], createApply(views[x], bitmapCached, specs[x], views[x].getWidth(),
+                        views[x].getHeight())));
+            } else {
+                sizes[x * 2] = views[x].getWidth();
+                sizes[(x * 2) + 1] = views[x].getHeight();
+                pending.add(x);
+                isVisible |= isVisible(views[x]);
+            }
+        }
+        mFrameApplier.postAll(appliesCached);
+        if(pending.isEmpty()) {return doneFuture();}
+
+        final CancellationToken[] tokens = new CancellationToken[count];
+        for(Integer index : pending) {
+            tokens[index] = registerJob(views[index]);
+        }
+        Future<?> future = submitToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                List<Runnable> applies = new ArrayList<Runnable>(pending.size());
+                for(Integer index : pending) {
+                    CancellationToken token = tokens[index];
+                    if(token.isCancelled()) {continue;}
+                    CancellationToken.setCurrent(token);
+                    startJobMetrics(metrics[index]);
+                    try {
+                        int width = sizes[index * 2];
+                        int height = sizes[(index * 2) + 1];
+                        Bitmap bitmap = renderShadow(views[index].getBackground(), specs[index], width, height, keys[index]);
+                        if(bitmap == null) {continue;}
+                        applies.add(withMetrics(createApply(views[index], bitmap, specs[index], width, height)));
+                    } catch (CancellationException e) {
+                        /* superseded by a newer decoration of the view */
+                    } finally {
+                        endJobMetrics();
+                        CancellationToken.setCurrent(null);
+                        unregisterJob(views[index], token);
                     }
                 }
+                mFrameApplier.postAll(applies);
+            }
+        }, isVisible);
+        for(Integer index : pending) {
+            tokens[index].setFuture(future);
+        }
+        return future;
+    }
 
-                int addLeft = 0;
-                int addTop = 0;
-                final int paddingLeft = (aOffsetLeft < 0) ? aShadowSize : -aOffsetLeft * 2;
-                final int paddingTop = (aOffsetTop < 0) ? aShadowSize : -aOffsetTop * 2;
-                if(aOffsetLeft < 0) {addLeft = offsetLeft;}
-                if(aOffsetTop < 0) {addTop = offsetTop;}
-
-                if(aIsExpand) {
-                    rectDest.set(aShadowSize + addLeft, aShadowSize + addTop,
-                            bitmapCurrent.getWidth() + aShadowSize + addLeft, bitmapCurrent.getHeight() + aShadowSize + addTop);
-                } else {
-                    rectDest.set(aShadowSize + addLeft, aShadowSize + addTop,
-                            bitmapCurrent.getWidth() - aShadowSize + addLeft, bitmapCurrent.getHeight() - aShadowSize + addTop);
-                }
-                canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        Context ctx = mWeakCtx.get();
-                        if(ctx == null) {return;}
+    /**
+     * Drops a stretchable shadow behind a view with a rectangular or rounded rectangle background.
+     * Only a small tile with the blurred corners is rendered, so memory and blur time do not depend on the size of the view.
+     * The background of the view is drawn inset by the shadow size on top of the shadow.
+     * @param aView - view which to decorate with a shadow.
+     * @param aCornerRadius - corner radius of the background in pixels, 0 for rectangles.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetLeft - offset of the shadow from left.
+     * @param aOffsetTop - offset of the shadow from top.
+     * @return Future - handle of the job which can be cancelled.
+     */
+	public Future<?> dropShadowNinePatch(final View aView, final int aCornerRadius, final int aShadowSize, final int aShadowColor,
+            final int aOffsetLeft, final int aOffsetTop)
+	{
+        final BlurBackend blurBackend = mBlurBackend;
+        return submitJob(aView, createMetrics("dropShadowNinePatch"), new Runnable() {
+            @Override
+            public void run() {
+                markStage(ShadowMetrics.STAGE_BLUR);
+                Bitmap tile = getNinePatchTile(aCornerRadius, aShadowSize, blurBackend);
+                CancellationToken.throwIfCurrentCancelled();
 
-                        aView.setPadding(paddingLeft, paddingTop, aView.getPaddingRight(), aView.getPaddingBottom());
-                        aView.setBackgroundDrawable(new BitmapDrawable(ctx.getResources(), bitmap));
-                    }
-                });
+                mFrameApplier.post(withMetrics(createLayerApply(aView, new ShadowNinePatchDrawable(tile, aShadowColor),
+                        new Rect(aOffsetLeft, aOffsetTop, -aOffsetLeft, -aOffsetTop),
+                        new Rect(aShadowSize, aShadowSize, aShadowSize, aShadowSize))));
             }
         });
 	}
 
     /**
-     * Drops offset shadow using GaussianBlur with Renderscript.
+     * Drops a Gaussian blurred shadow behind a view with a rectangular background, in CSS box shadow terms.
+     * The shadow is computed in closed form, the background is not rasterized or blurred, so the cost does not depend on the blur.
+     * The background of the view is inset to make room for the shadow inside the bounds of the view.
      * @param aView - view which to decorate with a shadow.
-     * @param aShadowSize - size of the shadow in pixels.
+     * @param aBlur - blur radius in pixels.
+     * @param aSpread - spread of the shadow in pixels, negative values shrink it.
      * @param aShadowColor - color of the shadow.
-     * @param aOffsetLeft - offset from left.
-     * @param aOffsetTop - offset from top.
-     * @param aIsExpand - if the view should expand with the size of the shadow or if it should keep it's size.
-     * @return void.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
      */
-	public void dropShadowGaussianBlur(final View aView, final int aShadowSize, final int aShadowColor,
-            final int aOffsetLeft, final int aOffsetTop, final boolean aIsExpand)
-	{
-        mExecutor.execute(new Runnable() {
+    public Future<?> dropShadowRect(View aView, int aBlur, int aSpread, int aShadowColor, int aOffsetX, int aOffsetY)
+    {
+        return dropShadowAnalytic(aView, kSHAPE_ROUND_RECT, 0, aBlur, aSpread, aShadowColor, aOffsetX, aOffsetY);
+    }
+
+    /**
+     * Same as dropShadowRect for a rounded rectangle background.
+     * @param aView - view which to decorate with a shadow.
+     * @param aCornerRadius - corner radius of the background in pixels, the spread is added to it.
+     * @param aBlur - blur radius in pixels.
+     * @param aSpread - spread of the shadow in pixels, negative values shrink it.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+    public Future<?> dropShadowRoundRect(View aView, int aCornerRadius, int aBlur, int aSpread, int aShadowColor,
+            int aOffsetX, int aOffsetY)
+    {
+        return dropShadowAnalytic(aView, kSHAPE_ROUND_RECT, aCornerRadius, aBlur, aSpread, aShadowColor, aOffsetX, aOffsetY);
+    }
+
+    /**
+     * Same as dropShadowRect for a circle background, the circle fills the shorter side of the inset background.
+     * @param aView - view which to decorate with a shadow.
+     * @param aBlur - blur radius in pixels.
+     * @param aSpread - spread of the shadow in pixels, negative values shrink it.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+    public Future<?> dropShadowCircle(View aView, int aBlur, int aSpread, int aShadowColor, int aOffsetX, int aOffsetY)
+    {
+        return dropShadowAnalytic(aView, kSHAPE_CIRCLE, 0, aBlur, aSpread, aShadowColor, aOffsetX, aOffsetY);
+    }
+
+    /**
+     * Drops a shadow of any background shape, computed from the signed distance field of the background.
+     * The field is computed once per background and size and cached, after that a shadow with another radius, spread,
+     * falloff or offset is one table lookup per pixel without a blur, which suits elevation changes.
+     * The background is kept and the shadow is drawn around it outside the bounds of the view, like elevation shadows,
+     * so the parent must leave room for it and not clip it, for example with setClipChildren(false).
+     * @param aView - view which to decorate with a shadow.
+     * @param aRadius - radius of the falloff in pixels.
+     * @param aSpread - spread of the shadow in pixels, negative values shrink it.
+     * @param aFalloff - DistanceField.FALLOFF_GAUSSIAN, FALLOFF_LINEAR or FALLOFF_SMOOTH.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled, already done if the shadow was cached.
+     */
+    public Future<?> dropShadowDistanceField(final View aView, final int aRadius, final int aSpread, final int aFalloff,
+            final int aShadowColor, final int aOffsetX, final int aOffsetY)
+    {
+        int extent = Math.max(aRadius + aSpread, 0) + 1;
+        final Rect rectOutsets = new Rect(Math.max(extent - aOffsetX, 0), Math.max(extent - aOffsetY, 0),
+                Math.max(extent + aOffsetX, 0), Math.max(extent + aOffsetY, 0));
+        final ShadowKey key = createDrawableKey(aView, kALGORITHM_DISTANCE_FIELD, aRadius, aSpread, aFalloff, aShadowColor,
+                aOffsetX, aOffsetY);
+        ShadowMetrics metrics = createMetrics("dropShadowDistanceField");
+        Bitmap bitmapCached = getCachedShadow(key, metrics);
+        Context ctxCurrent = mWeakCtx.get();
+        if(bitmapCached != null && ctxCurrent != null) {
+            cancel(aView);
+            mFrameApplier.post(withMetrics(metrics, createOutsetApply(aView, new BitmapDrawable(ctxCurrent.getResources(), bitmapCached),
+                    rectOutsets)));
+            return doneFuture();
+        }
+
+        final int viewWidth = aView.getWidth();
+        final int viewHeight = aView.getHeight();
+        Drawable drawable = aView.getBackground();
+        final ShadowKey keyField = (mDistanceFieldCache != null && drawable != null)
+                ? ShadowKey.forDrawable(drawable, viewWidth, viewHeight, kALGORITHM_DISTANCE_FIELD) : null;
+        return submitJob(aView, metrics, new Runnable() {
             @Override
             public void run() {
                 Context ctx = mWeakCtx.get();
                 if(ctx == null) {return;}
 
-                Bitmap bitmapCurrent = convertToBitmap(aView.getBackground(), aView.getWidth(), aView.getHeight());
-                int currentWidth = bitmapCurrent.getWidth();
-                int currentHeight = bitmapCurrent.getHeight();
-                int offsetLeft = Math.abs(aOffsetLeft);
-                int offsetTop = Math.abs(aOffsetTop);
-                int offsetLeftAdd = offsetLeft;
-                int offsetTopAdd = offsetTop;
-
-                Rect rectSrc = new Rect(0, 0, currentWidth, currentHeight);
-                Rect rectDest = null;
-                Bitmap bitmapTemp = null;
-                Bitmap bitmapAlpha = null;
-                if(aIsExpand) {
-                    rectDest = new Rect(aShadowSize, aShadowSize, currentWidth + aShadowSize, currentHeight + aShadowSize);
-                    bitmapTemp = Bitmap.createBitmap(currentWidth + (aShadowSize * 2) + offsetLeft,
-                            currentHeight + (aShadowSize * 2) + offsetTop, Config.ARGB_8888);
-                    bitmapAlpha = bitmapCurrent.extractAlpha();
-                } else {
-                    rectDest = new Rect(aShadowSize, aShadowSize, currentWidth - aShadowSize, currentHeight - aShadowSize);
-                    bitmapTemp = Bitmap.createBitmap(currentWidth + offsetLeft, currentHeight + offsetTop, Config.ARGB_8888);
-                    bitmapAlpha = Bitmap.createScaledBitmap(bitmapCurrent.extractAlpha(),
-                            currentWidth - (aShadowSize * 2) + offsetLeft, currentHeight - (aShadowSize * 2) + offsetTop, false);
+                DistanceField field = getDistanceField(keyField, aView, viewWidth, viewHeight);
+                markStage(ShadowMetrics.STAGE_BLUR);
+                int width = viewWidth + rectOutsets.left + rectOutsets.right;
+                int height = viewHeight + rectOutsets.top + rectOutsets.bottom;
+                AlphaMask mask = new AlphaMask(width, height);
+                field.render(mask, rectOutsets.left + aOffsetX, rectOutsets.top + aOffsetY, aSpread, aRadius, aFalloff);
+                CancellationToken.throwIfCurrentCancelled();
+
+                markStage(ShadowMetrics.STAGE_COMPOSE);
+                Bitmap bitmapMask = obtainBitmap(width, height, Config.ALPHA_8);
+                copyAlphaMask(mask, bitmapMask);
+                Bitmap bitmap = createBitmap(width, height, Config.ARGB_8888);
+                drawShadowMask(new Canvas(bitmap), bitmapMask, aShadowColor);
+                releaseBitmap(bitmapMask);
+                putCachedShadow(key, bitmap);
+
+                mFrameApplier.post(withMetrics(createOutsetApply(aView, new BitmapDrawable(ctx.getResources(), bitmap), rectOutsets)));
+            }
+        });
+    }
+
+    /**
+     * Drops a Gaussian blurred shadow behind the view without copying its background. The view gets a ShadowDrawable
+     * which draws the tinted shadow mask and then the original background, so state lists and ripples keep working
+     * and a shadow costs one ALPHA_8 mask, shared by all views with the same shape, radius and blur backend.
+     * With setDownsampleBlur the mask is also stored at the lower resolution. The shadow is drawn outside the bounds
+     * of the view, so the parent must leave room for it and not clip it, for example with setClipChildren(false).
+     * @param aView - view which to decorate with a shadow.
+     * @param aRadius - blur radius in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled.
+     */
+    public Future<?> dropShadowLazy(final View aView, final int aRadius, final int aShadowColor, final int aOffsetX, final int aOffsetY)
+    {
+        final int viewWidth = aView.getWidth();
+        final int viewHeight = aView.getHeight();
+        final Rect rectOutsets = new Rect(aRadius - aOffsetX, aRadius - aOffsetY, aRadius + aOffsetX, aRadius + aOffsetY);
+        return submitJob(aView, createMetrics("dropShadowLazy"), new Runnable() {
+            @Override
+            public void run() {
+                /* only the alpha of the background is drawn, straight into the padded mask */
+                markStage(ShadowMetrics.STAGE_RASTERIZE);
+                Bitmap bitmapShape = obtainBitmap(viewWidth + (aRadius * 2), viewHeight + (aRadius * 2), Config.ALPHA_8);
+                Canvas canvasShape = new Canvas(bitmapShape);
+                canvasShape.translate(aRadius, aRadius);
+                Drawable drawable = aView.getBackground();
+                drawable.setBounds(0, 0, viewWidth, viewHeight);
+                drawable.draw(canvasShape);
+                markStage(ShadowMetrics.STAGE_EXTRACT);
+                AlphaMask mask = extractAlphaMask(bitmapShape);
+                releaseBitmap(bitmapShape);
+
+                BlurBackend blurBackend = mBlurBackend;
+                int factor = downsampleFactor(aRadius);
+                ShadowKey key = (mShadowCache != null)
+                        ? ShadowKey.forMask(mask, kALGORITHM_LAZY, aRadius, factor, backendId(blurBackend)) : null;
+                Bitmap bitmapMask = getCachedShadow(key);
+                if(bitmapMask == null) {
+                    markStage(ShadowMetrics.STAGE_BLUR);
+                    if(factor > 1) {mask = MaskScaler.downsample(mask, factor);}
+                    blurBackend.blur(mask, (factor > 1) ? blurBackend.scaleRadius(aRadius, factor) : aRadius);
+                    CancellationToken.throwIfCurrentCancelled();
+                    markStage(ShadowMetrics.STAGE_COMPOSE);
+                    bitmapMask = createBitmap(mask.width, mask.height, Config.ALPHA_8);
+                    copyAlphaMask(mask, bitmapMask);
+                    putCachedShadow(key, bitmapMask);
                 }
-                final Bitmap bitmap = bitmapTemp;
 
-                Paint paint = new Paint();
-                paint.setColor(aShadowColor);
-                Canvas canvas = new Canvas(bitmap);
+                final Bitmap bitmapShadow = bitmapMask;
+                final CancellationToken token = CancellationToken.current();
+                mFrameApplier.post(withMetrics(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(mWeakCtx.get() == null || token.isCancelled()) {return;}
+
+                        watchSize(aView, null);
+                        aView.setBackgroundDrawable(new ShadowDrawable(aView.getBackground(), bitmapShadow, rectOutsets, aShadowColor));
+                    }
+                }));
+            }
+        });
+    }
+
+    /**
+     * Drops a shadow baked at build time by the prebakeShadows task, no blur is done at runtime.
+     * The baked PNG only holds the blurred alpha, it is tinted with the color when drawn below the original background
+     * by a ShadowDrawable, and it is scaled with the background if the view is not drawn at the size of the drawable.
+     * The shadow is drawn outside the bounds of the view, so the parent must leave room for it and not clip it.
+     * @param aView - view which to decorate with a shadow, its background is the drawable the shadow was baked from.
+     * @param aShadowResId - resource of the baked shadow, R.drawable.name_shadow.
+     * @param aShadowColor - color of the shadow.
+     * @param aOffsetX - horizontal offset of the shadow.
+     * @param aOffsetY - vertical offset of the shadow.
+     * @return Future - handle of the job which can be cancelled.
+     */
+    public Future<?> dropShadowPrebaked(final View aView, final int aShadowResId, final int aShadowColor, final int aOffsetX,
+            final int aOffsetY)
+    {
+        final int viewWidth = aView.getWidth();
+        final int viewHeight = aView.getHeight();
+        return submitJob(aView, createMetrics("dropShadowPrebaked"), new Runnable() {
+            @Override
+            public void run() {
+                Context ctx = mWeakCtx.get();
+                if(ctx == null) {return;}
 
-                if(aOffsetLeft < 0) {offsetLeftAdd = 0;}
-                if(aOffsetTop < 0) {offsetTopAdd = 0;}
+                ShadowKey key = (mShadowCache != null) ? new ShadowKey(Integer.valueOf(aShadowResId), kALGORITHM_PREBAKED) : null;
+                Bitmap bitmapMask = getCachedShadow(key);
+                if(bitmapMask == null) {
+                    markStage(ShadowMetrics.STAGE_RASTERIZE);
+                    Bitmap bitmapBaked = BitmapFactory.decodeResource(ctx.getResources(), aShadowResId);
+                    if(bitmapBaked == null) {return;}
+                    markStage(ShadowMetrics.STAGE_EXTRACT);
+                    bitmapMask = bitmapBaked.extractAlpha();
+                    bitmapBaked.recycle();
+                    putCachedShadow(key, bitmapMask);
+                }
 
-                canvas.drawBitmap(bitmapAlpha, aShadowSize + offsetLeftAdd, aShadowSize + offsetTopAdd, null);
-                Bitmap bitmapShadow = gaussianBlur(ctx, bitmap, aShadowSize);
-                canvas.drawBitmap(bitmapShadow, 0, 0, paint);
+                /* the baked shadow is larger than the drawable by the radius, scaled like the drawable to the view */
+                Drawable drawable = aView.getBackground();
+                int drawableWidth = (drawable != null && drawable.getIntrinsicWidth() > 0) ? drawable.getIntrinsicWidth() : viewWidth;
+                int drawableHeight = (drawable != null && drawable.getIntrinsicHeight() > 0) ? drawable.getIntrinsicHeight() : viewHeight;
+                int outsetX = Math.round(((bitmapMask.getWidth() - drawableWidth) / 2f) * viewWidth / drawableWidth);
+                int outsetY = Math.round(((bitmapMask.getHeight() - drawableHeight) / 2f) * viewHeight / drawableHeight);
+                final Rect rectOutsets = new Rect(outsetX - aOffsetX, outsetY - aOffsetY, outsetX + aOffsetX, outsetY + aOffsetY);
+
+                final Bitmap bitmapShadow = bitmapMask;
+                final CancellationToken token = CancellationToken.current();
+                mFrameApplier.post(withMetrics(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(mWeakCtx.get() == null || token.isCancelled()) {return;}
 
-                if(aOffsetLeft < 0) {offsetLeftAdd = offsetLeft;} else {offsetLeftAdd = 0;}
-                if(aOffsetTop < 0) {offsetTopAdd = offsetTop;} else {offsetTopAdd = 0;}
+                        watchSize(aView, null);
+                        aView.setBackgroundDrawable(new ShadowDrawable(aView.getBackground(), bitmapShadow, rectOutsets, aShadowColor));
+                    }
+                }));
+            }
+        });
+    }
 
-                rectDest.set(aShadowSize + offsetLeftAdd, aShadowSize + offsetTopAdd, rectDest.right + offsetLeftAdd, rectDest.bottom + offsetTopAdd);
-                canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
+    /**
+     * Decorates the view with a shadow whose elevation can be animated every frame, also before Lollipop.
+     * The background is blurred once per shape at the radii 0, 1, 2, 4 .. aMaxElevation, the levels are cached
+     * by the content of the shape, and each frame cross-fades the two levels nearest to the elevation.
+     * The background of the view becomes an AnimatedShadowDrawable, animate it with setElevation or
+     * ObjectAnimator.ofFloat(aView.getBackground(), "elevation", ..). The shadow is drawn outside the bounds of the view,
+     * so the parent must leave room for it and not clip it, for example with setClipChildren(false).
+     * @param aView - view which to decorate with a shadow.
+     * @param aMaxElevation - largest elevation in pixels, also the largest blur radius.
+     * @param aElevation - elevation in pixels to start with.
+     * @param aShadowColor - color of the shadow.
+     * @return Future - handle of the job which can be cancelled.
+     */
+    public Future<?> dropShadowAnimated(final View aView, final int aMaxElevation, final float aElevation, final int aShadowColor)
+    {
+        final int viewWidth = aView.getWidth();
+        final int viewHeight = aView.getHeight();
+        return submitJob(aView, createMetrics("dropShadowAnimated"), new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmapCurrent = convertToPooledBitmap(aView.getBackground(), viewWidth, viewHeight);
+                markStage(ShadowMetrics.STAGE_EXTRACT);
+                AlphaMask shape = extractAlphaMask(bitmapCurrent);
+                releaseBitmap(bitmapCurrent);
+                markStage(ShadowMetrics.STAGE_BLUR);
+
+                final int[] radii = ShadowPyramid.levelRadii(aMaxElevation);
+                final int padding = radii[radii.length - 1] + 1;
+                BlurBackend blurBackend = new BoxGaussianBlurBackend(mStripeRunner);
+                final Bitmap[] levels = new Bitmap[radii.length];
+                for(int x = 0; x < radii.length; x++) {
+                    ShadowKey key = (mShadowCache != null) ? ShadowKey.forMask(shape, kALGORITHM_PYRAMID, radii[x], padding) : null;
+                    levels[x] = getCachedShadow(key);
+                    if(levels[x] == null) {
+                        AlphaMask level = ShadowPyramid.buildLevel(shape, padding, radii[x], blurBackend);
+                        CancellationToken.throwIfCurrentCancelled();
+                        levels[x] = createBitmap(level.width, level.height, Config.ALPHA_8);
+                        copyAlphaMask(level, levels[x]);
+                        putCachedShadow(key, levels[x]);
+                    }
+                }
 
-                mHandler.post(new Runnable() {
+                final CancellationToken token = CancellationToken.current();
+                mFrameApplier.post(withMetrics(new Runnable() {
                     @Override
                     public void run() {
-                        Context ctx = mWeakCtx.get();
-                        if(ctx == null) {return;}
-                        aView.setPadding(-aOffsetLeft, -aOffsetTop, aView.getPaddingRight(), aView.getPaddingBottom());
-                        aView.setBackgroundDrawable(new BitmapDrawable(ctx.getResources(), bitmap));
+                        if(mWeakCtx.get() == null || token.isCancelled()) {return;}
+
+                        watchSize(aView, null);
+                        AnimatedShadowDrawable drawable = new AnimatedShadowDrawable(aView.getBackground(), levels, radii, padding,
+                                aShadowColor);
+                        drawable.setElevation(aElevation);
+                        aView.setBackgroundDrawable(drawable);
                     }
-                });
+                }));
             }
         });
-	}
+    }
+
+    private Future<?> dropShadowAnalytic(final View aView, final int aShape, final int aCornerRadius, final int aBlur, final int aSpread,
+            final int aShadowColor, final int aOffsetX, final int aOffsetY)
+    {
+        final int viewWidth = aView.getWidth();
+        final int viewHeight = aView.getHeight();
+        int extent = aBlur + aSpread;
+        final Rect rectInsets = new Rect(Math.max(extent - aOffsetX, 0), Math.max(extent - aOffsetY, 0),
+                Math.max(extent + aOffsetX, 0), Math.max(extent + aOffsetY, 0));
+        final ShadowKey key = (mShadowCache != null) ? new ShadowKey(AnalyticShadow.class, kALGORITHM_ANALYTIC, aShape,
+                viewWidth, viewHeight, aCornerRadius, aBlur, aSpread, aShadowColor, aOffsetX, aOffsetY) : null;
+
+        return submitJob(aView, createMetrics("dropShadowAnalytic"), new Runnable() {
+            @Override
+            public void run() {
+                Context ctx = mWeakCtx.get();
+                if(ctx == null) {return;}
+
+                Bitmap bitmap = getCachedShadow(key);
+                if(bitmap == null) {
+                    markStage(ShadowMetrics.STAGE_BLUR);
+                    float left = rectInsets.left + aOffsetX - aSpread;
+                    float top = rectInsets.top + aOffsetY - aSpread;
+                    float right = viewWidth - rectInsets.right + aOffsetX + aSpread;
+                    float bottom = viewHeight - rectInsets.bottom + aOffsetY + aSpread;
+                    float sigma = BoxGaussianBlurBackend.sigmaForRadius(aBlur);
+                    AlphaMask mask = null;
+                    if(aShape == kSHAPE_CIRCLE) {
+                        float radius = (Math.min(viewWidth - rectInsets.left - rectInsets.right,
+                                viewHeight - rectInsets.top - rectInsets.bottom) / 2f) + aSpread;
+                        mask = AnalyticShadow.circle(viewWidth, viewHeight, (left + right) / 2f, (top + bottom) / 2f,
+                                Math.max(radius, 0f), sigma);
+                    } else {
+                        mask = AnalyticShadow.roundRect(viewWidth, viewHeight, left, top, right, bottom,
+                                Math.max(aCornerRadius + aSpread, 0), sigma);
+                    }
+
+                    markStage(ShadowMetrics.STAGE_COMPOSE);
+                    Bitmap bitmapMask = obtainBitmap(viewWidth, viewHeight, Config.ALPHA_8);
+                    copyAlphaMask(mask, bitmapMask);
+                    bitmap = createBitmap(viewWidth, viewHeight, Config.ARGB_8888);
+                    drawShadowMask(new Canvas(bitmap), bitmapMask, aShadowColor);
+                    releaseBitmap(bitmapMask);
+                    putCachedShadow(key, bitmap);
+                }
+
+                mFrameApplier.post(withMetrics(createLayerApply(aView, new BitmapDrawable(ctx.getResources(), bitmap), new Rect(),
+                        rectInsets)));
+            }
+        });
+    }
 
     /**
      * Drops offset shadow using elevation property of the view if running on Android 5+ or using the ShadowViewDecorator methods if lower.
@@ -437,9 +967,9 @@ public class ShadowViewDecorator {
      * @param aIsExpand - if the view should expand with the size of the shadow or if it should keep it's size.
      * @param aChangeMargins - if the decorator should change the margins of the view with the size of the shadow.
      * @param aElevation - elevation if available.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if elevation is used.
      */
-	public void dropShadowCompat(View aView, int aOffsetLeft, int aOffsetTop, int aShadowSize, int aShadowLayersCount, int aShadowColor,
+	public Future<?> dropShadowCompat(View aView, int aOffsetLeft, int aOffsetTop, int aShadowSize, int aShadowLayersCount, int aShadowColor,
 			int aAlphaInit, int aAlphaStep, boolean aIsExpand, ChangeMargins aChangeMargins, float aElevation)
 	{
 		int sdkLevel = android.os.Build.VERSION.SDK_INT;
@@ -447,21 +977,22 @@ public class ShadowViewDecorator {
 			try {
 				Method methodSetElevation = aView.getClass().getMethod(STR_METHOD_setElevation, new Class[]{float.class});
 				methodSetElevation.invoke(aView, new Object[]{aElevation});
+				return doneFuture();
 			} catch (NoSuchMethodException e) {
-				dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
+				return dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
                         aAlphaInit, aAlphaStep, aIsExpand, aChangeMargins);
 			} catch (IllegalAccessException e) {
-				dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
+				return dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
                         aAlphaInit, aAlphaStep, aIsExpand, aChangeMargins);
 			} catch (IllegalArgumentException e) {
-				dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
+				return dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
                         aAlphaInit, aAlphaStep, aIsExpand, aChangeMargins);
 			} catch (InvocationTargetException e) {
-				dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
+				return dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor,
                         aAlphaInit, aAlphaStep, aIsExpand, aChangeMargins);
 			}
 		} else {
-			dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor, aAlphaInit, aAlphaStep,
+			return dropShadow(aView, aOffsetLeft, aOffsetTop, aShadowSize, aShadowLayersCount, aShadowColor, aAlphaInit, aAlphaStep,
                     aIsExpand, aChangeMargins);
 		}
 	}
@@ -473,9 +1004,9 @@ public class ShadowViewDecorator {
      * @param aShadowSize - shadow size in pixels.
      * @param aShadowColor - shadow color.
      * @param aElevation - elevation if available.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if elevation is used.
      */
-	public void dropShadowBoxBlurCompat(View aView, int aShadowSize, int aShadowColor, float aElevation,
+	public Future<?> dropShadowBoxBlurCompat(View aView, int aShadowSize, int aShadowColor, float aElevation,
             int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
 	{
 		int sdkLevel = android.os.Build.VERSION.SDK_INT;
@@ -483,17 +1014,18 @@ public class ShadowViewDecorator {
 			try {
 				Method methodSetElevation = aView.getClass().getMethod(STR_METHOD_setElevation, new Class[]{float.class});
 				methodSetElevation.invoke(aView, new Object[]{aElevation});
+				return doneFuture();
 			} catch (NoSuchMethodException e) {
-				dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (IllegalAccessException e) {
-				dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (IllegalArgumentException e) {
-				dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (InvocationTargetException e) {
-				dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			}
 		} else {
-			dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+			return dropShadowBoxBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 		}
 	}
 
@@ -507,9 +1039,9 @@ public class ShadowViewDecorator {
      * @param aOffsetTop - offset from top.
      * @param aElevation - elevation if available.
      * @param aIsExpand - if the view should expand with the size of the shadow or if it should keep it's size.
-     * @return void.
+     * @return Future - handle of the job which can be cancelled, already done if elevation is used.
      */
-	public void dropShadowGaussianBlurCompat(View aView, int aShadowSize, int aShadowColor,
+	public Future<?> dropShadowGaussianBlurCompat(View aView, int aShadowSize, int aShadowColor,
 			int aOffsetLeft, int aOffsetTop, float aElevation, boolean aIsExpand)
 	{
 		int sdkLevel = android.os.Build.VERSION.SDK_INT;
@@ -517,17 +1049,18 @@ public class ShadowViewDecorator {
 			try {
 				Method methodSetElevation = aView.getClass().getMethod(STR_METHOD_setElevation, new Class[]{float.class});
 				methodSetElevation.invoke(aView, new Object[]{aElevation});
+				return doneFuture();
 			} catch (NoSuchMethodException e) {
-				dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (IllegalAccessException e) {
-				dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (IllegalArgumentException e) {
-				dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			} catch (InvocationTargetException e) {
-				dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+				return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 			}
 		} else {
-			dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
+			return dropShadowGaussianBlur(aView, aShadowSize, aShadowColor, aOffsetLeft, aOffsetTop, aIsExpand);
 		}
 	}
 
@@ -553,34 +1086,30 @@ public class ShadowViewDecorator {
         int offsetLeft = Math.abs(aOffsetLeft);
         int offsetTop = Math.abs(aOffsetTop);
 
-		Bitmap bitmapAlpha = bitmapCurrent.extractAlpha();
-		Bitmap bitmap = null;
+		int bitmapWidth = 0;
+		int bitmapHeight = 0;
 		Rect rectSrc = new Rect(0, 0, bitmapCurrentWidth, bitmapCurrentHeight);
 		Rect rectDest = null;
         if(aIsExpand) {
             rectDest = new Rect(aOffsetLeft, aOffsetTop, bitmapCurrentWidth + (aShadowSize * 2), bitmapCurrentHeight + (aShadowSize * 2));
-            bitmap = Bitmap.createBitmap(bitmapCurrentWidth + (aShadowSize * 2) + offsetLeft,
-                    bitmapCurrentHeight + (aShadowSize * 2) + offsetTop, Config.ARGB_8888);
+            bitmapWidth = bitmapCurrentWidth + (aShadowSize * 2) + offsetLeft;
+            bitmapHeight = bitmapCurrentHeight + (aShadowSize * 2) + offsetTop;
         } else {
             rectDest = new Rect(aOffsetLeft, aOffsetTop, bitmapCurrentWidth + offsetLeft,
                     bitmapCurrentHeight + offsetTop);
-            bitmap = Bitmap.createBitmap(bitmapCurrentWidth + offsetLeft,
-                    bitmapCurrentHeight + offsetTop, Config.ARGB_8888);
+            bitmapWidth = bitmapCurrentWidth + offsetLeft;
+            bitmapHeight = bitmapCurrentHeight + offsetTop;
         }
 
-		Paint paint = new Paint();
-		paint.setColor(aShadowColor);
-		paint.setAlpha(aAlphaInit);
+		Bitmap bitmapMask = obtainBitmap(bitmapWidth, bitmapHeight, Config.ALPHA_8);
+		drawLayeredMask(bitmapMask, bitmapCurrent, rectDest, aShadowSize, aShadowLayersCount, aAlphaInit, aAlphaStep,
+				true, true, true, true);
+
+		Bitmap bitmap = createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
 		Canvas canvas = new Canvas(bitmap);
+		drawShadowMask(canvas, bitmapMask, aShadowColor | 0xFF000000);
+		releaseBitmap(bitmapMask);
 
-		int add = aShadowSize / aShadowLayersCount;
-		for(int x = 0; x < aShadowLayersCount; x++) {
-			canvas.drawBitmap(bitmapAlpha, rectSrc, rectDest, paint);
-			int alpha = paint.getAlpha() + aAlphaStep;
-			if(alpha > 255) {alpha = 255;}
-			paint.setAlpha(alpha);
-			rectDest.set(rectDest.left + add, rectDest.top + add, rectDest.right - add, rectDest.bottom - add);
-		}
 		rectDest.set(aShadowSize, aShadowSize, bitmapCurrentWidth - aShadowSize, bitmapCurrentHeight - aShadowSize);
 		canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
 		return bitmap;
@@ -599,7 +1128,23 @@ public class ShadowViewDecorator {
     public Bitmap createShadowGaussianBlur(Bitmap aBitmap, int aOffsetLeft, int aOffsetTop, int aShadowSize,
             int aShadowColor, boolean aIsExpand)
     {
-        Context ctx = mWeakCtx.get();
+        return createShadowGaussianBlur(aBitmap, aOffsetLeft, aOffsetTop, aShadowSize, aShadowColor, aIsExpand, mBlurBackend);
+    }
+
+    /**
+     * Creates an offset shadow with the shape of the passed in bitmap, blurred with the passed in blur backend.
+     * @param aBitmap - bitmap from which to extract shape and size for the shadow.
+     * @param aOffsetLeft - offset from left.
+     * @param aOffsetTop - offset from top.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @param aIsExpand - if the bitmap size should be expanded with the size of the shadow or not.
+     * @param aBlurBackend - backend which blurs the shadow mask.
+     * @return Bitmap - the shadow as bitmap.
+     */
+    public Bitmap createShadowGaussianBlur(Bitmap aBitmap, int aOffsetLeft, int aOffsetTop, int aShadowSize,
+            int aShadowColor, boolean aIsExpand, BlurBackend aBlurBackend)
+    {
         Bitmap bitmapCurrent = aBitmap;
         int currentWidth = bitmapCurrent.getWidth();
         int currentHeight = bitmapCurrent.getHeight();
@@ -608,31 +1153,52 @@ public class ShadowViewDecorator {
 
         Rect rectSrc = new Rect(0, 0, currentWidth, currentHeight);
         Rect rectDest = null;
-        Bitmap bitmap = null;
-        Bitmap bitmapAlpha = null;
+        int bitmapWidth = 0;
+        int bitmapHeight = 0;
+        int alphaWidth = 0;
+        int alphaHeight = 0;
         if(aIsExpand) {
             rectDest = new Rect(aShadowSize, aShadowSize, currentWidth + aShadowSize, currentHeight + aShadowSize);
-            bitmap = Bitmap.createBitmap(currentWidth + (aShadowSize * 2) + offsetLeft,
-                    currentHeight + (aShadowSize * 2) + offsetTop, Config.ARGB_8888);
-            bitmapAlpha = bitmapCurrent.extractAlpha();
+            bitmapWidth = currentWidth + (aShadowSize * 2) + offsetLeft;
+            bitmapHeight = currentHeight + (aShadowSize * 2) + offsetTop;
+            alphaWidth = currentWidth;
+            alphaHeight = currentHeight;
         } else {
             rectDest = new Rect(aShadowSize, aShadowSize, currentWidth - aShadowSize, currentHeight - aShadowSize);
-            bitmap = Bitmap.createBitmap(currentWidth + offsetLeft, currentHeight + offsetTop, Config.ARGB_8888);
-            bitmapAlpha = Bitmap.createScaledBitmap(bitmapCurrent.extractAlpha(),
-                    currentWidth - (aShadowSize * 2) + offsetLeft, currentHeight - (aShadowSize * 2) + offsetTop, false);
+            bitmapWidth = currentWidth + offsetLeft;
+            bitmapHeight = currentHeight + offsetTop;
+            alphaWidth = currentWidth - (aShadowSize * 2) + offsetLeft;
+            alphaHeight = currentHeight - (aShadowSize * 2) + offsetTop;
         }
 
-        Paint paint = new Paint();
-        paint.setColor(aShadowColor);
+        Bitmap bitmapMask = obtainBitmap(bitmapWidth, bitmapHeight, Config.ALPHA_8);
+        Canvas canvasMask = new Canvas(bitmapMask);
+        canvasMask.drawBitmap(bitmapCurrent, rectSrc, new Rect(aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop,
+                aShadowSize + aOffsetLeft + alphaWidth, aShadowSize + aOffsetTop + alphaHeight), null);
+
+        Bitmap bitmap = createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
         Canvas canvas = new Canvas(bitmap);
-        canvas.drawBitmap(bitmapAlpha, aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop, null);
-        Bitmap bitmapShadow = gaussianBlur(ctx, bitmap, aShadowSize);
-        canvas.drawBitmap(bitmapShadow, 0, 0, paint);
+        drawBlurredMask(canvas, bitmapMask, aShadowSize, aBlurBackend, aShadowColor, kALGORITHM_GAUSSIAN_BLUR,
+                downsampleFactor(aShadowSize));
+        releaseBitmap(bitmapMask);
         canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
 
         return bitmap;
     }
 
+    /**
+     * Creates a stretchable shadow for rectangular and rounded rectangle shapes.
+     * The returned drawable can be shared between views of any size with getConstantState().newDrawable().
+     * @param aCornerRadius - corner radius of the shape in pixels, 0 for rectangles.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowColor - color of the shadow.
+     * @return ShadowNinePatchDrawable - the shadow, the shape is inset by aShadowSize from its bounds.
+     */
+    public ShadowNinePatchDrawable createNinePatchShadow(int aCornerRadius, int aShadowSize, int aShadowColor)
+    {
+        return new ShadowNinePatchDrawable(getNinePatchTile(aCornerRadius, aShadowSize, mBlurBackend), aShadowColor);
+    }
+
     /**
      * Creates a shadow with the shape of the passed in bitmap on selected sides of the view.
      * @param aBitmap - bitmap from which to extract shape and size.
@@ -654,32 +1220,959 @@ public class ShadowViewDecorator {
 			int bitmapCurrentWidth = bitmapCurrent.getWidth();
 			int bitmapCurrentHeight = bitmapCurrent.getHeight();
 
-			Bitmap bitmapAlpha = bitmapCurrent.extractAlpha();
-			final Bitmap bitmap = Bitmap.createBitmap(bitmapCurrentWidth, bitmapCurrentHeight, Config.ARGB_8888);
+			Bitmap bitmapMask = obtainBitmap(bitmapCurrentWidth, bitmapCurrentHeight, Config.ALPHA_8);
 			Rect rectSrc = new Rect(0, 0, bitmapCurrentWidth, bitmapCurrentHeight);
 			Rect rectDest = new Rect(0, 0, bitmapCurrentWidth, bitmapCurrentHeight);
+			drawLayeredMask(bitmapMask, bitmapCurrent, rectDest, aShadowSize, aShadowLayersCount, aAlphaInit, aAlphaStep,
+					aShadowLeft, aShadowTop, aShadowRight, aShadowBottom);
 
-			Paint paint = new Paint();
-			paint.setColor(aShadowColor);
-			paint.setAlpha(aAlphaInit);
+			final Bitmap bitmap = createBitmap(bitmapCurrentWidth, bitmapCurrentHeight, Config.ARGB_8888);
 			Canvas canvas = new Canvas(bitmap);
+			drawShadowMask(canvas, bitmapMask, aShadowColor | 0xFF000000);
+			releaseBitmap(bitmapMask);
 
-			int add = aShadowSize / aShadowLayersCount;
-			for(int x = 0; x < aShadowLayersCount; x++) {
-				canvas.drawBitmap(bitmapAlpha, rectSrc, rectDest, paint);
-				int alpha = paint.getAlpha() + aAlphaStep;
-				if(alpha > 255) {alpha = 255;}
-				paint.setAlpha(alpha);
-				rectDest.set(aShadowLeft ? (rectDest.left + add) : rectDest.left, aShadowTop ? (rectDest.top + add) : rectDest.top,
-						aShadowRight ? (rectDest.right - add) : rectDest.right, aShadowBottom ? (rectDest.bottom - add) : rectDest.bottom);
-			}
-
-			rectDest.set(aShadowLeft ? rectDest.left : 0, aShadowTop ? rectDest.top : 0,
-					aShadowRight ? rectDest.right : bitmapCurrentWidth, aShadowBottom ? rectDest.bottom : bitmapCurrentHeight);
+			/* the background is drawn inside the last layer */
+			int inset = (aShadowSize / aShadowLayersCount) * aShadowLayersCount;
+			rectDest.set(aShadowLeft ? inset : 0, aShadowTop ? inset : 0, aShadowRight ? (bitmapCurrentWidth - inset) : bitmapCurrentWidth,
+					aShadowBottom ? (bitmapCurrentHeight - inset) : bitmapCurrentHeight);
 			canvas.drawBitmap(bitmapCurrent, rectSrc, rectDest, null);
 			return bitmap;
 	}
 
+    /**
+     * Draws the layered shadow of a bitmap into a mask. The bitmap is drawn once, scaled to the first layer,
+     * and LayeredShadow turns it into the layers in one pass over the pixels instead of one blit per layer.
+     * @param aBitmapMask - cleared ALPHA_8 mask to draw into.
+     * @param aBitmap - bitmap whose alpha is the shape of the shadow.
+     * @param aRectDest - bounds of the first layer, may reach out of the mask.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aShadowLayersCount - count of layers.
+     * @param aAlphaInit - alpha of the first layer.
+     * @param aAlphaStep - alpha added with each layer.
+     * @param aShadowLeft - layers shrink from the left side.
+     * @param aShadowTop - layers shrink from the top side.
+     * @param aShadowRight - layers shrink from the right side.
+     * @param aShadowBottom - layers shrink from the bottom side.
+     * @return void.
+     */
+    private void drawLayeredMask(Bitmap aBitmapMask, Bitmap aBitmap, Rect aRectDest, int aShadowSize, int aShadowLayersCount,
+            int aAlphaInit, int aAlphaStep, boolean aShadowLeft, boolean aShadowTop, boolean aShadowRight, boolean aShadowBottom)
+    {
+        if(aRectDest.width() <= 0 || aRectDest.height() <= 0) {return;}
+        markStage(ShadowMetrics.STAGE_EXTRACT);
+        Rect rectSrc = new Rect(0, 0, aBitmap.getWidth(), aBitmap.getHeight());
+        boolean isInside = aRectDest.left >= 0 && aRectDest.top >= 0 && aRectDest.right <= aBitmapMask.getWidth()
+                && aRectDest.bottom <= aBitmapMask.getHeight();
+
+        /* layers which reach out of the mask are rendered whole, so their edges stay where the layered loop had them */
+        Bitmap bitmapLayers = isInside ? aBitmapMask : obtainBitmap(aRectDest.width(), aRectDest.height(), Config.ALPHA_8);
+        Rect rectLayers = isInside ? aRectDest : new Rect(0, 0, aRectDest.width(), aRectDest.height());
+        new Canvas(bitmapLayers).drawBitmap(aBitmap, rectSrc, rectLayers, null);
+
+        AlphaMask mask = extractAlphaMask(bitmapLayers);
+        markStage(ShadowMetrics.STAGE_BLUR);
+        LayeredShadow.render(mask, aShadowSize, aShadowLayersCount, aAlphaInit, aAlphaStep, aShadowLeft, aShadowTop,
+                aShadowRight, aShadowBottom);
+        markStage(ShadowMetrics.STAGE_COMPOSE);
+        copyAlphaMask(mask, bitmapLayers);
+        if(!isInside) {
+            new Canvas(aBitmapMask).drawBitmap(bitmapLayers, aRectDest.left, aRectDest.top, null);
+            releaseBitmap(bitmapLayers);
+        }
+    }
+
+    /**
+     * Blurs the ALPHA_8 mask and draws it tinted with the shadow color.
+     * With a downsample factor the mask is blurred on a shrunk copy which is scaled back up
+     * with bilinear filtering while drawing. Blurred masks are cached by their content.
+     * @param aCanvas - canvas to draw on.
+     * @param aBitmapMask - ALPHA_8 mask of the shadow, blurred in place when not downsampled and not cached.
+     * @param aRadius - blur radius in pixels.
+     * @param aBlurBackend - backend which blurs the mask.
+     * @param aShadowColor - color of the shadow.
+     * @param aAlgorithm - algorithm of the shadow, part of the cache key.
+     * @param aFactor - downsample factor of the blur, 1 to blur at full size.
+     * @return void.
+     */
+    private void drawBlurredMask(Canvas aCanvas, Bitmap aBitmapMask, int aRadius, BlurBackend aBlurBackend, int aShadowColor,
+            int aAlgorithm, int aFactor)
+    {
+        markStage(ShadowMetrics.STAGE_EXTRACT);
+        AlphaMask mask = extractAlphaMask(aBitmapMask);
+        int factor = aFactor;
+        ShadowCache cache = mShadowCache;
+        ShadowKey key = null;
+        Bitmap bitmapBlurred = null;
+        if(cache != null) {
+            key = ShadowKey.forMask(mask, aAlgorithm, aRadius, factor, backendId(aBlurBackend));
+            bitmapBlurred = getCachedShadow(key);
+        }
+
+        if(bitmapBlurred == null) {
+            markStage(ShadowMetrics.STAGE_BLUR);
+            if(factor == 1) {
+                aBlurBackend.blur(mask, aRadius);
+            } else {
+                mask = MaskScaler.downsample(mask, factor);
+                aBlurBackend.blur(mask, aBlurBackend.scaleRadius(aRadius, factor));
+            }
+
+            if(factor == 1 && key == null) {
+                bitmapBlurred = aBitmapMask;
+            } else {
+                bitmapBlurred = (key == null) ? obtainBitmap(mask.width, mask.height, Config.ALPHA_8)
+                        : createBitmap(mask.width, mask.height, Config.ALPHA_8);
+            }
+            copyAlphaMask(mask, bitmapBlurred);
+            putCachedShadow(key, bitmapBlurred);
+        }
+
+        markStage(ShadowMetrics.STAGE_COMPOSE);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setColor(aShadowColor);
+        Rect rectSrc = new Rect(0, 0, bitmapBlurred.getWidth(), bitmapBlurred.getHeight());
+        Rect rectDest = new Rect(0, 0, bitmapBlurred.getWidth() * factor, bitmapBlurred.getHeight() * factor);
+        aCanvas.drawBitmap(bitmapBlurred, rectSrc, rectDest, paint);
+        if(key == null && bitmapBlurred != aBitmapMask) {releaseBitmap(bitmapBlurred);}
+    }
+
+    /**
+     * @param aCornerRadius - corner radius of the shape in pixels.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @param aBlurBackend - backend which blurs the tile.
+     * @return Bitmap - the nine patch tile from the cache, created if it is not cached.
+     */
+    private Bitmap getNinePatchTile(int aCornerRadius, int aShadowSize, BlurBackend aBlurBackend)
+    {
+        ShadowKey key = (mShadowCache != null)
+                ? new ShadowKey(ShadowNinePatchDrawable.class, kALGORITHM_NINE_PATCH, aCornerRadius, aShadowSize, backendId(aBlurBackend))
+                : null;
+        Bitmap tile = getCachedShadow(key);
+        if(tile == null) {
+            tile = createNinePatchTile(aCornerRadius, aShadowSize, aBlurBackend);
+            putCachedShadow(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * @param aView - view which will be decorated.
+     * @param aSpec - the shadow.
+     * @return ShadowKey - key of the shadow for the background of the view, or null if caching is off.
+     */
+    private ShadowKey createShadowKey(View aView, ShadowSpec aSpec)
+    {
+        switch(aSpec.algorithm) {
+            case kALGORITHM_LAYERS:
+                return createDrawableKey(aView, kALGORITHM_LAYERS, aSpec.shadowSize, aSpec.shadowLayersCount, aSpec.shadowColor,
+                        aSpec.alphaInit, aSpec.alphaStep, aSpec.offsetLeft, aSpec.offsetTop, aSpec.isExpand ? 1 : 0);
+            case kALGORITHM_BOX_BLUR:
+                return createDrawableKey(aView, kALGORITHM_BOX_BLUR, aSpec.shadowSize, aSpec.shadowColor,
+                        aSpec.offsetLeft, aSpec.offsetTop, aSpec.isExpand ? 1 : 0, mIsDownsampleBlur ? 1 : 0);
+            default:
+                return createDrawableKey(aView, kALGORITHM_GAUSSIAN_BLUR, aSpec.shadowSize, aSpec.shadowColor,
+                        aSpec.offsetLeft, aSpec.offsetTop, aSpec.isExpand ? 1 : 0, mIsDownsampleBlur ? 1 : 0,
+                        backendId(gaussianBackend(aSpec)));
+        }
+    }
+
+    private BlurBackend gaussianBackend(ShadowSpec aSpec)
+    {
+        return (aSpec.blurBackend != null) ? aSpec.blurBackend : mBlurBackend;
+    }
+
+    /**
+     * Renders the background of the view with its shadow, on a worker thread. The job is admitted by the memory governor
+     * first, if it is downgraded the blur is downsampled and the shadow is not cached.
+     * @param aDrawable - background of the view.
+     * @param aSpec - the shadow.
+     * @param aViewWidth - width of the view.
+     * @param aViewHeight - height of the view.
+     * @param aKey - key to cache the shadow under, or null.
+     * @return Bitmap - the background with the shadow, or null if the context is gone.
+     */
+    private Bitmap renderShadow(Drawable aDrawable, ShadowSpec aSpec, int aViewWidth, int aViewHeight, ShadowKey aKey)
+    {
+        boolean isBlur = aSpec.algorithm != kALGORITHM_LAYERS;
+        int factor = isBlur ? downsampleFactor(aSpec.shadowSize) : 1;
+        MemoryGovernor governor = mMemoryGovernor;
+        long bytes = 0;
+        boolean isDowngraded = false;
+        if(governor != null) {
+            /* layers need the same memory for any count of layers, so only the blur has a cheaper level */
+            int factorLow = Math.max(2, MaskScaler.factorForRadius(aSpec.shadowSize));
+            long[] levelBytes = (isBlur && factorLow > factor && aSpec.shadowSize >= 2)
+                    ? new long[] {estimateRenderBytes(aSpec, aViewWidth, aViewHeight, factor),
+                            estimateRenderBytes(aSpec, aViewWidth, aViewHeight, factorLow)}
+                    : new long[] {estimateRenderBytes(aSpec, aViewWidth, aViewHeight, factor)};
+            /* the wait for the budget counts as waiting in the queue */
+            markStage(ShadowMetrics.STAGE_QUEUE);
+            int level = governor.acquire("Shadow of " + aViewWidth + "x" + aViewHeight + " with size " + aSpec.shadowSize,
+                    levelBytes);
+            bytes = levelBytes[level];
+            isDowngraded = level > 0;
+            if(isDowngraded) {factor = factorLow;}
+        }
+
+        Bitmap bitmap = null;
+        try {
+            Bitmap bitmapCurrent = convertToPooledBitmap(aDrawable, aViewWidth, aViewHeight);
+            switch(aSpec.algorithm) {
+                case kALGORITHM_LAYERS:
+                    bitmap = renderLayers(bitmapCurrent, aSpec.shadowSize, aSpec.shadowLayersCount, aSpec.shadowColor,
+                            aSpec.alphaInit, aSpec.alphaStep, aSpec.offsetLeft, aSpec.offsetTop, aSpec.isExpand);
+                    break;
+                case kALGORITHM_BOX_BLUR:
+                    bitmap = renderBoxBlur(bitmapCurrent, aSpec.shadowSize, aSpec.shadowColor, aSpec.offsetLeft, aSpec.offsetTop,
+                            aSpec.isExpand, factor);
+                    break;
+                default:
+                    if(mWeakCtx.get() != null) {
+                        bitmap = renderGaussianBlur(bitmapCurrent, aSpec.shadowSize, aSpec.shadowColor, aSpec.offsetLeft,
+                                aSpec.offsetTop, aSpec.isExpand, gaussianBackend(aSpec), factor);
+                    }
+                    break;
+            }
+            releaseBitmap(bitmapCurrent);
+        } finally {
+            if(governor != null) {governor.release(bytes);}
+        }
+        if(bitmap != null && !isDowngraded) {putCachedShadow(aKey, bitmap);}
+        return bitmap;
+    }
+
+    /**
+     * Estimates the most bytes held at once while rendering the shadow: the copy of the background, the mask,
+     * its AlphaMask, the result and the buffers of the blur or of the layers.
+     * @param aSpec - the shadow.
+     * @param aViewWidth - width of the view.
+     * @param aViewHeight - height of the view.
+     * @param aFactor - downsample factor of the blur.
+     * @return long - estimated peak bytes, at least the real peak.
+     */
+    private static long estimateRenderBytes(ShadowSpec aSpec, int aViewWidth, int aViewHeight, int aFactor)
+    {
+        int expand = aSpec.isExpand ? (aSpec.shadowSize * 2) : 0;
+        long width = aViewWidth + expand + (Math.abs(aSpec.offsetLeft) * 2);
+        long height = aViewHeight + expand + (Math.abs(aSpec.offsetTop) * 2);
+        long pixels = width * height;
+        long bytes = (4L * aViewWidth * aViewHeight) + (pixels * (1 + 1 + 4));
+        if(aSpec.algorithm == kALGORITHM_LAYERS) {
+            /* the distances of LayeredShadow and a copy of the mask if the layers reach out of it */
+            bytes += pixels * (4 + 1);
+        } else if(aFactor == 1) {
+            /* the buffer of the blur and the padded rows of the copy back */
+            bytes += pixels * 2;
+        } else {
+            /* the downsampled mask, the buffer of its blur and its bitmap */
+            bytes += (pixels * 3) / (aFactor * aFactor);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param aRadius - blur radius in pixels.
+     * @return int - downsample factor of the blur as set with setDownsampleBlur, 1 if it is off.
+     */
+    private int downsampleFactor(int aRadius)
+    {
+        return mIsDownsampleBlur ? MaskScaler.factorForRadius(aRadius) : 1;
+    }
+
+    private Bitmap renderLayers(Bitmap aBitmapCurrent, int aShadowSize, int aShadowLayersCount, int aShadowColor,
+            int aAlphaInit, int aAlphaStep, int aOffsetLeft, int aOffsetTop, boolean aIsExpand)
+    {
+        int offsetLeft = Math.abs(aOffsetLeft);
+        int offsetTop = Math.abs(aOffsetTop);
+        int bitmapCurrentWidth = aBitmapCurrent.getWidth();
+        int bitmapCurrentHeight = aBitmapCurrent.getHeight();
+
+        int bitmapWidth = 0;
+        int bitmapHeight = 0;
+        Rect rectSrc = new Rect(0, 0, bitmapCurrentWidth, bitmapCurrentHeight);
+        Rect rectDest = null;
+        if(aIsExpand) {
+            rectDest = new Rect(offsetLeft, offsetTop, bitmapCurrentWidth + (aShadowSize * 2) + offsetLeft,
+                    bitmapCurrentHeight + (aShadowSize * 2) + offsetTop);
+            bitmapWidth = bitmapCurrentWidth + (aShadowSize * 2) + (offsetLeft * 2);
+            bitmapHeight = bitmapCurrentHeight + (aShadowSize * 2) + (offsetTop * 2);
+        } else {
+            rectDest = new Rect(offsetLeft, offsetTop, bitmapCurrentWidth + offsetLeft, bitmapCurrentHeight + offsetTop);
+            bitmapWidth = bitmapCurrentWidth + (offsetLeft * 2);
+            bitmapHeight = bitmapCurrentHeight + (offsetTop * 2);
+        }
+
+        Bitmap bitmapMask = obtainBitmap(bitmapWidth, bitmapHeight, Config.ALPHA_8);
+        drawLayeredMask(bitmapMask, aBitmapCurrent, rectDest, aShadowSize, aShadowLayersCount, aAlphaInit, aAlphaStep,
+                true, true, true, true);
+
+        Bitmap bitmap = createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawShadowMask(canvas, bitmapMask, aShadowColor | 0xFF000000);
+        releaseBitmap(bitmapMask);
+
+        if(aIsExpand) {
+            rectDest.set(aShadowSize, aShadowSize, bitmapCurrentWidth + aShadowSize, bitmapCurrentHeight + aShadowSize);
+        } else {
+            rectDest.set(aShadowSize, aShadowSize, bitmapCurrentWidth - aShadowSize, bitmapCurrentHeight - aShadowSize);
+        }
+        canvas.drawBitmap(aBitmapCurrent, rectSrc, rectDest, null);
+        return bitmap;
+    }
+
+    private Bitmap renderBoxBlur(Bitmap aBitmapCurrent, int aShadowSize, int aShadowColor, int aOffsetLeft, int aOffsetTop,
+            boolean aIsExpand, int aFactor)
+    {
+        int bitmapWidth = 0;
+        int bitmapHeight = 0;
+        int offsetLeft = Math.abs(aOffsetLeft);
+        int offsetTop = Math.abs(aOffsetTop);
+        int currentWidth = aBitmapCurrent.getWidth();
+        int currentHeight = aBitmapCurrent.getHeight();
+
+        Rect rectSrc = new Rect(0, 0, currentWidth, currentHeight);
+        Rect rectDest = null;
+        if(aIsExpand) {
+            rectDest = new Rect(aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop, currentWidth + aShadowSize + aOffsetLeft,
+                    currentHeight + aShadowSize + aOffsetTop);
+            bitmapWidth = currentWidth + (aShadowSize * 2) + (offsetLeft * 2);
+            bitmapHeight = currentHeight + (aShadowSize * 2) + (offsetTop * 2);
+        } else {
+            rectDest = new Rect(aShadowSize + aOffsetLeft, aShadowSize + aOffsetTop,
+                    currentWidth - aShadowSize + aOffsetLeft, currentHeight - aShadowSize + aOffsetTop);
+            bitmapWidth = currentWidth + (offsetLeft * 2);
+            bitmapHeight = currentHeight + (offsetTop * 2);
+        }
+
+        /*
+         * Box blur
+         * The shadow has a single color, so only its alpha mask is rasterized and blurred.
+         * The color is applied when the mask is drawn into the final bitmap.
+         */
+        markStage(ShadowMetrics.STAGE_EXTRACT);
+        Bitmap bitmapMask = obtainBitmap(bitmapWidth, bitmapHeight, Config.ALPHA_8);
+        Canvas canvasMask = new Canvas(bitmapMask);
+        canvasMask.drawBitmap(aBitmapCurrent, rectSrc, rectDest, null);
+
+        Bitmap bitmap = createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawBlurredMask(canvas, bitmapMask, aShadowSize, mBoxBlurBackend, aShadowColor, kALGORITHM_BOX_BLUR, aFactor);
+        releaseBitmap(bitmapMask);
+
+        int addLeft = 0;
+        int addTop = 0;
+        if(aOffsetLeft < 0) {addLeft = offsetLeft;}
+        if(aOffsetTop < 0) {addTop = offsetTop;}
+
+        if(aIsExpand) {
+            rectDest.set(aShadowSize + addLeft, aShadowSize + addTop,
+                    currentWidth + aShadowSize + addLeft, currentHeight + aShadowSize + addTop);
+        } else {
+            rectDest.set(aShadowSize + addLeft, aShadowSize + addTop,
+                    currentWidth - aShadowSize + addLeft, currentHeight - aShadowSize + addTop);
+        }
+        canvas.drawBitmap(aBitmapCurrent, rectSrc, rectDest, null);
+        return bitmap;
+    }
+
+    private Bitmap renderGaussianBlur(Bitmap aBitmapCurrent, int aShadowSize, int aShadowColor, int aOffsetLeft, int aOffsetTop,
+            boolean aIsExpand, BlurBackend aBlurBackend, int aFactor)
+    {
+        int currentWidth = aBitmapCurrent.getWidth();
+        int currentHeight = aBitmapCurrent.getHeight();
+        int offsetLeft = Math.abs(aOffsetLeft);
+        int offsetTop = Math.abs(aOffsetTop);
+        int offsetLeftAdd = offsetLeft;
+        int offsetTopAdd = offsetTop;
+
+        Rect rectSrc = new Rect(0, 0, currentWidth, currentHeight);
+        Rect rectDest = null;
+        int bitmapWidth = 0;
+        int bitmapHeight = 0;
+        int alphaWidth = 0;
+        int alphaHeight = 0;
+        if(aIsExpand) {
+            rectDest = new Rect(aShadowSize, aShadowSize, currentWidth + aShadowSize, currentHeight + aShadowSize);
+            bitmapWidth = currentWidth + (aShadowSize * 2) + offsetLeft;
+            bitmapHeight = currentHeight + (aShadowSize * 2) + offsetTop;
+            alphaWidth = currentWidth;
+            alphaHeight = currentHeight;
+        } else {
+            rectDest = new Rect(aShadowSize, aShadowSize, currentWidth - aShadowSize, currentHeight - aShadowSize);
+            bitmapWidth = currentWidth + offsetLeft;
+            bitmapHeight = currentHeight + offsetTop;
+            alphaWidth = currentWidth - (aShadowSize * 2) + offsetLeft;
+            alphaHeight = currentHeight - (aShadowSize * 2) + offsetTop;
+        }
+
+        if(aOffsetLeft < 0) {offsetLeftAdd = 0;}
+        if(aOffsetTop < 0) {offsetTopAdd = 0;}
+
+        /* The alpha of the background is drawn straight into the mask, scaled without filtering if not expanding. */
+        markStage(ShadowMetrics.STAGE_EXTRACT);
+        Bitmap bitmapMask = obtainBitmap(bitmapWidth, bitmapHeight, Config.ALPHA_8);
+        Canvas canvasMask = new Canvas(bitmapMask);
+        canvasMask.drawBitmap(aBitmapCurrent, rectSrc, new Rect(aShadowSize + offsetLeftAdd, aShadowSize + offsetTopAdd,
+                aShadowSize + offsetLeftAdd + alphaWidth, aShadowSize + offsetTopAdd + alphaHeight), null);
+
+        Bitmap bitmap = createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawBlurredMask(canvas, bitmapMask, aShadowSize, aBlurBackend, aShadowColor, kALGORITHM_GAUSSIAN_BLUR, aFactor);
+        releaseBitmap(bitmapMask);
+
+        if(aOffsetLeft < 0) {offsetLeftAdd = offsetLeft;} else {offsetLeftAdd = 0;}
+        if(aOffsetTop < 0) {offsetTopAdd = offsetTop;} else {offsetTopAdd = 0;}
+
+        rectDest.set(aShadowSize + offsetLeftAdd, aShadowSize + offsetTopAdd, rectDest.right + offsetLeftAdd, rectDest.bottom + offsetTopAdd);
+        canvas.drawBitmap(aBitmapCurrent, rectSrc, rectDest, null);
+        return bitmap;
+    }
+
+    /**
+     * @param aKey - key of the background, or null if caching is off.
+     * @param aView - view whose background to use.
+     * @param aViewWidth - width of the view.
+     * @param aViewHeight - height of the view.
+     * @return DistanceField - field of the background from the cache, computed if it is not cached.
+     */
+    private DistanceField getDistanceField(ShadowKey aKey, View aView, int aViewWidth, int aViewHeight)
+    {
+        DistanceFieldCache cache = mDistanceFieldCache;
+        DistanceField field = (aKey != null && cache != null) ? cache.get(aKey) : null;
+        if(field == null) {
+            Bitmap bitmapCurrent = convertToPooledBitmap(aView.getBackground(), aViewWidth, aViewHeight);
+            markStage(ShadowMetrics.STAGE_EXTRACT);
+            AlphaMask mask = extractAlphaMask(bitmapCurrent);
+            releaseBitmap(bitmapCurrent);
+            markStage(ShadowMetrics.STAGE_BLUR);
+            field = DistanceField.compute(mask);
+            if(aKey != null && cache != null) {cache.put(aKey, field);}
+        }
+        return field;
+    }
+
+    /**
+     * @param aView - view which will be decorated.
+     * @param aParams - parameters of the shadow.
+     * @return ShadowKey - key of the shadow for the background of the view, or null if caching is off.
+     */
+    private ShadowKey createDrawableKey(View aView, int... aParams)
+    {
+        Drawable drawable = aView.getBackground();
+        if(mShadowCache == null || drawable == null) {return null;}
+        return ShadowKey.forDrawable(drawable, aView.getWidth(), aView.getHeight(), aParams);
+    }
+
+    /**
+     * Looks the shadow up in the memory cache and then for persistent keys in the disk cache,
+     * masks found on disk are put in the memory cache.
+     * @param aKey - key of the shadow, or null if caching is off.
+     * @return Bitmap - the cached shadow or null.
+     */
+    private Bitmap getCachedShadow(ShadowKey aKey)
+    {
+        return getCachedShadow(aKey, (mMetricsListener != null) ? ShadowMetrics.current() : null);
+    }
+
+    /**
+     * Same as getCachedShadow, counting the lookup in the passed in metrics.
+     * @param aKey - key of the shadow, or null if caching is off.
+     * @param aMetrics - metrics of the request, or null.
+     * @return Bitmap - the cached shadow or null.
+     */
+    private Bitmap getCachedShadow(ShadowKey aKey, ShadowMetrics aMetrics)
+    {
+        ShadowCache cache = mShadowCache;
+        if(aKey == null || cache == null) {return null;}
+        Bitmap bitmap = cache.get(aKey);
+        DiskShadowCache diskCache = mDiskCache;
+        if(bitmap == null && diskCache != null && aKey.isPersistent()) {
+            bitmap = diskCache.get(aKey);
+            if(bitmap != null) {cache.put(aKey, bitmap);}
+        }
+        if(aMetrics != null) {aMetrics.recordCacheLookup(bitmap != null);}
+        return bitmap;
+    }
+
+    private void putCachedShadow(ShadowKey aKey, Bitmap aBitmap)
+    {
+        ShadowCache cache = mShadowCache;
+        if(aKey == null || cache == null) {return;}
+        cache.put(aKey, aBitmap);
+        DiskShadowCache diskCache = mDiskCache;
+        if(diskCache != null) {diskCache.put(aKey, aBitmap);}
+    }
+
+    /**
+     * @param aWidth - width of the bitmap.
+     * @param aHeight - height of the bitmap.
+     * @param aConfig - config of the bitmap.
+     * @return Bitmap - transparent intermediate bitmap from the pool, or a new one if pooling is off.
+     */
+    private Bitmap obtainBitmap(int aWidth, int aHeight, Config aConfig)
+    {
+        BitmapPool pool = mBitmapPool;
+        if(pool == null) {return createBitmap(aWidth, aHeight, aConfig);}
+        if(mMetricsListener == null) {return pool.get(aWidth, aHeight, aConfig);}
+
+        /* only a miss allocates, the pool methods lock the pool so no other job can miss in between */
+        synchronized(pool) {
+            int missCount = pool.getMissCount();
+            Bitmap bitmap = pool.get(aWidth, aHeight, aConfig);
+            if(pool.getMissCount() != missCount) {ShadowMetrics.recordAllocation((long)bitmap.getRowBytes() * aHeight);}
+            return bitmap;
+        }
+    }
+
+    /**
+     * Same as Bitmap.createBitmap, counting the bytes of the bitmap in the metrics of the job.
+     * @param aWidth - width of the bitmap.
+     * @param aHeight - height of the bitmap.
+     * @param aConfig - config of the bitmap.
+     * @return Bitmap - new transparent bitmap.
+     */
+    private Bitmap createBitmap(int aWidth, int aHeight, Config aConfig)
+    {
+        Bitmap bitmap = Bitmap.createBitmap(aWidth, aHeight, aConfig);
+        if(mMetricsListener != null) {ShadowMetrics.recordAllocation((long)bitmap.getRowBytes() * aHeight);}
+        return bitmap;
+    }
+
+    /**
+     * Puts an intermediate bitmap back in the pool, or recycles it if pooling is off.
+     * @param aBitmap - bitmap which is no longer used.
+     * @return void.
+     */
+    private void releaseBitmap(Bitmap aBitmap)
+    {
+        BitmapPool pool = mBitmapPool;
+        if(pool == null) {
+            aBitmap.recycle();
+            return;
+        }
+        pool.put(aBitmap);
+    }
+
+    /**
+     * Same as convertToBitmap, with the bitmap taken from the pool.
+     * @param aDrawable - drawable to draw.
+     * @param aWidth - width of the bitmap.
+     * @param aHeight - height of the bitmap.
+     * @return Bitmap - the drawn drawable, put it back with releaseBitmap.
+     */
+    private Bitmap convertToPooledBitmap(Drawable aDrawable, int aWidth, int aHeight)
+    {
+        markStage(ShadowMetrics.STAGE_RASTERIZE);
+        Bitmap bitmapRet = obtainBitmap(aWidth, aHeight, Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmapRet);
+        aDrawable.setBounds(0, 0, aWidth, aHeight);
+        aDrawable.draw(canvas);
+        return bitmapRet;
+    }
+
+    /**
+     * @param aBlurBackend - backend.
+     * @return int - id of the backend class, part of the cache keys.
+     */
+    private static int backendId(BlurBackend aBlurBackend)
+    {
+        return aBlurBackend.getClass().getName().hashCode();
+    }
+
+    /**
+     * Submits a decoration job and cancels the previous job of the view, so only the newest decoration is set.
+     * The job runs with its CancellationToken as current, the blur stops at the next stripe once the token is cancelled.
+     * @param aView - view which the job decorates.
+     * @param aMetrics - metrics of the request from createMetrics, or null.
+     * @param aJob - the job.
+     * @return Future - handle of the job.
+     */
+    private Future<?> submitJob(final View aView, final ShadowMetrics aMetrics, final Runnable aJob)
+    {
+        final CancellationToken token = registerJob(aView);
+        Future<?> future = submitToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                if(token.isCancelled()) {return;}
+                CancellationToken.setCurrent(token);
+                startJobMetrics(aMetrics);
+                try {
+                    aJob.run();
+                } catch (CancellationException e) {
+                    /* superseded by a newer decoration of the view or cancelled */
+                } finally {
+                    endJobMetrics();
+                    CancellationToken.setCurrent(null);
+                    unregisterJob(aView, token);
+                }
+            }
+        }, isVisible(aView));
+        token.setFuture(future);
+        return future;
+    }
+
+    /**
+     * @param aRequest - name of the decorator method.
+     * @return ShadowMetrics - metrics of a new request waiting in the queue from now on, or null if metrics are off.
+     */
+    private ShadowMetrics createMetrics(String aRequest)
+    {
+        if(mMetricsListener == null) {return null;}
+        ShadowMetrics metrics = new ShadowMetrics(aRequest);
+        metrics.startStage(ShadowMetrics.STAGE_QUEUE);
+        return metrics;
+    }
+
+    /**
+     * Ends the queue wait of the request and makes its metrics current on the thread of the job.
+     * @param aMetrics - metrics of the request, or null.
+     * @return void.
+     */
+    private static void startJobMetrics(ShadowMetrics aMetrics)
+    {
+        if(aMetrics == null) {return;}
+        aMetrics.endStage();
+        ShadowMetrics.setCurrent(aMetrics);
+    }
+
+    /**
+     * Ends the stage of a job which stopped without posting its shadow, the metrics of such jobs are not reported.
+     * @return void.
+     */
+    private void endJobMetrics()
+    {
+        if(mMetricsListener == null) {return;}
+        ShadowMetrics metrics = ShadowMetrics.current();
+        if(metrics == null) {return;}
+        metrics.endStage();
+        ShadowMetrics.setCurrent(null);
+    }
+
+    /**
+     * Moves the metrics of the job to the next stage, which takes the time until the next mark.
+     * @param aStage - one of the ShadowMetrics.STAGE constants.
+     * @return void.
+     */
+    private void markStage(int aStage)
+    {
+        if(mMetricsListener == null) {return;}
+        ShadowMetrics metrics = ShadowMetrics.current();
+        if(metrics != null) {metrics.startStage(aStage);}
+    }
+
+    /**
+     * Same as withMetrics(ShadowMetrics, Runnable) with the metrics of the job running on the calling thread.
+     * @param aApply - main thread step which sets the shadow.
+     * @return Runnable - the step.
+     */
+    private Runnable withMetrics(Runnable aApply)
+    {
+        return withMetrics((mMetricsListener != null) ? ShadowMetrics.current() : null, aApply);
+    }
+
+    /**
+     * Hands the metrics of the request over to the main thread step which sets the shadow. The step is timed
+     * and then the metrics are passed to the listener, the job must not mark stages after this.
+     * @param aMetrics - metrics of the request, or null.
+     * @param aApply - main thread step which sets the shadow.
+     * @return Runnable - the step, timed if there are metrics.
+     */
+    private Runnable withMetrics(final ShadowMetrics aMetrics, final Runnable aApply)
+    {
+        final ShadowMetricsListener listener = mMetricsListener;
+        if(aMetrics == null || listener == null) {return aApply;}
+        aMetrics.endStage();
+        if(ShadowMetrics.current() == aMetrics) {ShadowMetrics.setCurrent(null);}
+        return new Runnable() {
+            @Override
+            public void run() {
+                aMetrics.startStage(ShadowMetrics.STAGE_APPLY);
+                try {
+                    aApply.run();
+                } finally {
+                    aMetrics.endStage();
+                }
+                listener.onShadowMetrics(aMetrics);
+            }
+        };
+    }
+
+    /**
+     * With a PriorityExecutor jobs for views on screen run before jobs for views which are not.
+     * @param aJob - the job.
+     * @param aIsVisible - if the job decorates views which are on screen.
+     * @return Future - handle of the job.
+     */
+    private Future<?> submitToExecutor(Runnable aJob, boolean aIsVisible)
+    {
+        if(!(mExecutor instanceof PriorityExecutor)) {return mExecutor.submit(aJob);}
+        int priority = aIsVisible ? PriorityExecutor.PRIORITY_VISIBLE : PriorityExecutor.PRIORITY_HIDDEN;
+        return ((PriorityExecutor) mExecutor).submit(aJob, priority);
+    }
+
+    /**
+     * @param aView - view which a new job decorates.
+     * @return CancellationToken - token of the new job, the token of the previous job of the view is cancelled.
+     */
+    private CancellationToken registerJob(View aView)
+    {
+        CancellationToken token = new CancellationToken();
+        synchronized(mViewJobs) {
+            CancellationToken tokenPrevious = mViewJobs.put(aView, token);
+            if(tokenPrevious != null) {tokenPrevious.cancel();}
+        }
+        return token;
+    }
+
+    private void unregisterJob(View aView, CancellationToken aToken)
+    {
+        synchronized(mViewJobs) {
+            if(mViewJobs.get(aView) == aToken) {mViewJobs.remove(aView);}
+        }
+    }
+
+    private static boolean isVisible(View aView)
+    {
+        return aView.getWindowVisibility() == View.VISIBLE && aView.isShown() && aView.getGlobalVisibleRect(new Rect());
+    }
+
+    /**
+     * @return Future - a future which is already done, for shadows set without a job.
+     */
+    private static Future<?> doneFuture()
+    {
+        FutureTask<Object> future = new FutureTask<Object>(new Runnable() {
+            @Override
+            public void run() {}
+        }, null);
+        future.run();
+        return future;
+    }
+
+    /**
+     * @param aView - view which to decorate.
+     * @param aBitmap - background with the shadow.
+     * @param aSpec - the shadow.
+     * @param aViewWidth - width of the view the shadow was rendered for.
+     * @param aViewHeight - height of the view the shadow was rendered for.
+     * @return Runnable - main thread step which sets the shadow on the view, and watches its size if resize aware.
+     */
+    private Runnable createApply(final View aView, final Bitmap aBitmap, final ShadowSpec aSpec, final int aViewWidth,
+            final int aViewHeight)
+    {
+        final Runnable apply;
+        if(aSpec.algorithm == kALGORITHM_BOX_BLUR) {
+            int paddingLeft = (aSpec.offsetLeft < 0) ? aSpec.shadowSize : -aSpec.offsetLeft * 2;
+            int paddingTop = (aSpec.offsetTop < 0) ? aSpec.shadowSize : -aSpec.offsetTop * 2;
+            apply = createApply(aView, aBitmap, paddingLeft, paddingTop, null, 0);
+        } else {
+            apply = createApply(aView, aBitmap, -aSpec.offsetLeft, -aSpec.offsetTop, aSpec.changeMargins, aSpec.shadowSize);
+        }
+        if(!mIsResizeAware) {return apply;}
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                Drawable drawableOriginal = aView.getBackground();
+                apply.run();
+                if(aView.getBackground() == drawableOriginal) {return;}
+                watchSize(aView, new ResizeListener(drawableOriginal, aSpec, aBitmap, aViewWidth, aViewHeight));
+            }
+        };
+    }
+
+    /**
+     * Creates the main thread step which sets a layer drawable with the shadow below the background of the view.
+     * Nothing is set if the job creating it was cancelled or superseded, also after the step was queued.
+     * @param aView - view which to decorate.
+     * @param aDrawableShadow - the shadow.
+     * @param aShadowInsets - insets of the shadow layer.
+     * @param aBackgroundInsets - insets of the background layer.
+     * @return Runnable - the step.
+     */
+    private Runnable createLayerApply(final View aView, final Drawable aDrawableShadow, final Rect aShadowInsets,
+            final Rect aBackgroundInsets)
+    {
+        final CancellationToken token = CancellationToken.current();
+        return new Runnable() {
+            @Override
+            public void run() {
+                if(mWeakCtx.get() == null || (token != null && token.isCancelled())) {return;}
+
+                watchSize(aView, null);
+                LayerDrawable drawableLayers = new LayerDrawable(new Drawable[]{aDrawableShadow, aView.getBackground()});
+                drawableLayers.setLayerInset(0, aShadowInsets.left, aShadowInsets.top, aShadowInsets.right, aShadowInsets.bottom);
+                drawableLayers.setLayerInset(1, aBackgroundInsets.left, aBackgroundInsets.top, aBackgroundInsets.right,
+                        aBackgroundInsets.bottom);
+                aView.setBackgroundDrawable(drawableLayers);
+            }
+        };
+    }
+
+    /**
+     * @param aView - view which to decorate.
+     * @param aDrawableShadow - the shadow, larger than the view by the outsets.
+     * @param aOutsets - how far the shadow reaches out of the view on each side.
+     * @return Runnable - main thread step which sets the shadow below the background of the view.
+     */
+    private Runnable createOutsetApply(View aView, Drawable aDrawableShadow, Rect aOutsets)
+    {
+        return createLayerApply(aView, aDrawableShadow, new Rect(-aOutsets.left, -aOutsets.top, -aOutsets.right, -aOutsets.bottom),
+                new Rect());
+    }
+
+    /**
+     * Creates the main thread step which sets the shadow bitmap as background of the view.
+     * Nothing is set if the job creating it was cancelled or superseded, also after the step was queued.
+     * @param aView - view which to decorate.
+     * @param aBitmap - background with the shadow.
+     * @param aPaddingLeft - left padding to set.
+     * @param aPaddingTop - top padding to set.
+     * @param aChangeMargins - which margins of the view to decrease by aShadowSize or null if none should be changed.
+     * @param aShadowSize - size of the shadow in pixels.
+     * @return Runnable - the step.
+     */
+    private Runnable createApply(final View aView, final Bitmap aBitmap, final int aPaddingLeft, final int aPaddingTop,
+            final ChangeMargins aChangeMargins, final int aShadowSize)
+    {
+        final CancellationToken token = CancellationToken.current();
+        return new Runnable() {
+            @Override
+            public void run() {
+                Context ctx = mWeakCtx.get();
+                if(ctx == null || (token != null && token.isCancelled())) {return;}
+
+                watchSize(aView, null);
+                aView.setPadding(aPaddingLeft, aPaddingTop, aView.getPaddingRight(), aView.getPaddingBottom());
+                aView.setBackgroundDrawable(new BitmapDrawable(ctx.getResources(), aBitmap));
+
+                if(aChangeMargins != null) {
+                    ViewGroup.MarginLayoutParams params = (ViewGroup.MarginLayoutParams) aView.getLayoutParams();
+                    params.setMargins((aChangeMargins.changeLeft) ? params.leftMargin - aShadowSize : params.leftMargin,
+                            (aChangeMargins.changeTop) ? params.topMargin - aShadowSize : params.topMargin,
+                            (aChangeMargins.changeRight) ? params.rightMargin - aShadowSize : params.rightMargin,
+                            (aChangeMargins.changeBottom) ? params.bottomMargin - aShadowSize : params.bottomMargin);
+                }
+            }
+        };
+    }
+
+    /**
+     * Replaces the resize listener of the view, on the main thread.
+     * @param aView - decorated view.
+     * @param aListener - listener of the new shadow, or null to stop watching the view.
+     * @return void.
+     */
+    private void watchSize(View aView, ResizeListener aListener)
+    {
+        ResizeListener listenerPrevious = (aListener != null) ? mResizeListeners.put(aView, aListener) : mResizeListeners.remove(aView);
+        if(listenerPrevious != null) {aView.removeOnLayoutChangeListener(listenerPrevious);}
+        if(aListener != null) {aView.addOnLayoutChangeListener(aListener);}
+    }
+
+    /**
+     * @param aBitmap - shadow to resize.
+     * @param aWidth - new width of the shadow.
+     * @param aHeight - new height of the shadow.
+     * @return Bitmap - the shadow stretched by its uniform middle band, or null if it cannot be stretched to the new size.
+     */
+    private static Bitmap stretchShadow(Bitmap aBitmap, int aWidth, int aHeight)
+    {
+        int width = aBitmap.getWidth();
+        int height = aBitmap.getHeight();
+        if(aBitmap.getConfig() != Config.ARGB_8888 || aBitmap.getRowBytes() != width * 4) {return null;}
+
+        /* the raw pixels are only compared and copied, so they are not unpremultiplied */
+        int[] pixels = new int[width * height];
+        aBitmap.copyPixelsToBuffer(IntBuffer.wrap(pixels));
+        int[] columns = ShadowStretcher.findUniformColumns(pixels, width, height);
+        int[] rows = ShadowStretcher.findUniformRows(pixels, width, height);
+        if(!ShadowStretcher.canStretch(columns, width, aWidth) || !ShadowStretcher.canStretch(rows, height, aHeight)) {return null;}
+
+        Bitmap bitmap = Bitmap.createBitmap(aWidth, aHeight, Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(IntBuffer.wrap(ShadowStretcher.stretch(pixels, width, height, columns, rows, aWidth, aHeight)));
+        return bitmap;
+    }
+
+    /**
+     * Follows the size of a view decorated with a full background shadow. The shadow keeps the difference between its size
+     * and the size of the view, so a view which grows by some pixels gets a shadow which is that much larger.
+     */
+    private class ResizeListener implements View.OnLayoutChangeListener {
+
+        private final Drawable mDrawableOriginal;
+        private final ShadowSpec mSpec;
+        /* the shadow on the view and the size it was made for */
+        private Bitmap mBitmap;
+        private int mBitmapViewWidth;
+        private int mBitmapViewHeight;
+        /* the size of the newest shadow job */
+        private int mViewWidth;
+        private int mViewHeight;
+
+        ResizeListener(Drawable aDrawableOriginal, ShadowSpec aSpec, Bitmap aBitmap, int aViewWidth, int aViewHeight)
+        {
+            mDrawableOriginal = aDrawableOriginal;
+            mSpec = aSpec;
+            mBitmap = aBitmap;
+            mBitmapViewWidth = aViewWidth;
+            mBitmapViewHeight = aViewHeight;
+            mViewWidth = aViewWidth;
+            mViewHeight = aViewHeight;
+        }
+
+        @Override
+        public void onLayoutChange(final View aView, int aLeft, int aTop, int aRight, int aBottom,
+                int aOldLeft, int aOldTop, int aOldRight, int aOldBottom)
+        {
+            final int viewWidth = aRight - aLeft;
+            final int viewHeight = aBottom - aTop;
+            if((viewWidth == mViewWidth && viewHeight == mViewHeight) || viewWidth <= 0 || viewHeight <= 0) {return;}
+
+            /* the view measured itself to the size of the shadow, the shadow now fits the view at that size */
+            final Bitmap bitmapCurrent = mBitmap;
+            if(viewWidth == bitmapCurrent.getWidth()) {
+                mBitmapViewWidth = viewWidth;
+                mViewWidth = viewWidth;
+            }
+            if(viewHeight == bitmapCurrent.getHeight()) {
+                mBitmapViewHeight = viewHeight;
+                mViewHeight = viewHeight;
+            }
+            if(viewWidth == mViewWidth && viewHeight == mViewHeight) {return;}
+
+            final int width = bitmapCurrent.getWidth() + (viewWidth - mBitmapViewWidth);
+            final int height = bitmapCurrent.getHeight() + (viewHeight - mBitmapViewHeight);
+            mViewWidth = viewWidth;
+            mViewHeight = viewHeight;
+            submitJob(aView, createMetrics("resize"), new Runnable() {
+                @Override
+                public void run() {
+                    markStage(ShadowMetrics.STAGE_COMPOSE);
+                    Bitmap bitmap = (width > 0 && height > 0) ? stretchShadow(bitmapCurrent, width, height) : null;
+                    if(bitmap == null && mDrawableOriginal != null) {
+                        bitmap = renderShadow(mDrawableOriginal, mSpec, viewWidth, viewHeight, null);
+                    }
+                    if(bitmap == null) {return;}
+
+                    final Bitmap bitmapResized = bitmap;
+                    final CancellationToken token = CancellationToken.current();
+                    mFrameApplier.post(withMetrics(new Runnable() {
+                        @Override
+                        public void run() {
+                            Context ctx = mWeakCtx.get();
+                            if(ctx == null || token.isCancelled() || mResizeListeners.get(aView) != ResizeListener.this) {return;}
+
+                            mBitmap = bitmapResized;
+                            mBitmapViewWidth = viewWidth;
+                            mBitmapViewHeight = viewHeight;
+                            aView.setBackgroundDrawable(new BitmapDrawable(ctx.getResources(), bitmapResized));
+                        }
+                    }));
+                }
+            });
+        }
+    }
 
 	/* Utils */
 	public static Bitmap convertToBitmap(Drawable drawable, int widthPixels, int heightPixels)
@@ -692,91 +2185,145 @@ public class ShadowViewDecorator {
 		return bitmapRet;
 	}
 
+	/**
+	 * Box blurs the passed in bitmap. The pixels are read once with getPixels, blurred with BoxBlur and written back
+	 * once with setPixels. Pixels outside of the bitmap are mirrored back into it.
+	 * Each pass reads the pixels of the previous one, the version before BoxBlur read the pixels it had just written,
+	 * which smeared the blur to the right and down, so results differ from it by up to about 50 per channel.
+	 * @param aBitmap - bitmap to blur.
+	 * @param aSize - blur radius in pixels.
+	 * @param aCreateNewBitmap - if the result should be written to a new bitmap or back to aBitmap.
+	 * @return Bitmap - the blurred bitmap.
+	 */
 	public static Bitmap boxBlur(Bitmap aBitmap, int aSize, boolean aCreateNewBitmap)
 	{
-		float kernel = 1.0f / ((aSize * 2) + 1);
+		int width = aBitmap.getWidth();
+		int height = aBitmap.getHeight();
 		Bitmap bitmap = null;
 		if(aCreateNewBitmap) {
-			bitmap = Bitmap.createBitmap(aBitmap.getWidth(), aBitmap.getHeight(), Config.ARGB_8888);
+			bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
 		} else {
 			bitmap = aBitmap;
 		}
 
-		Rect rectSrc = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
-		Rect rectDest = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+		int[] pixels = new int[width * height];
+		aBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+		BoxBlur.blurArgb(pixels, width, height, aSize);
+		bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+		return bitmap;
+	}
 
-		Canvas canvas = new Canvas(bitmap);
+	/**
+	 * Renders the blurred tile of a nine patch shadow. The tile is (2 * half + 1) pixels wide and high,
+	 * where half is 2 * aShadowSize + aCornerRadius: the blur outside the shape, the corner and the blur inside the shape.
+	 * The middle row and column are the same as every row and column of the stretched edges.
+	 * @param aCornerRadius - corner radius of the shape in pixels.
+	 * @param aShadowSize - size of the shadow in pixels.
+	 * @param aBlurBackend - backend which blurs the tile.
+	 * @return Bitmap - ALPHA_8 tile for ShadowNinePatchDrawable.
+	 */
+	public static Bitmap createNinePatchTile(int aCornerRadius, int aShadowSize, BlurBackend aBlurBackend)
+	{
+		int half = (aShadowSize * 2) + aCornerRadius;
+		int size = (half * 2) + 1;
+		Bitmap tile = Bitmap.createBitmap(size, size, Config.ALPHA_8);
+		Canvas canvas = new Canvas(tile);
+		Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		RectF rectShape = new RectF(aShadowSize, aShadowSize, size - aShadowSize, size - aShadowSize);
+		canvas.drawRoundRect(rectShape, aCornerRadius, aCornerRadius, paint);
+
+		AlphaMask mask = extractAlphaMask(tile);
+		aBlurBackend.blur(mask, aShadowSize);
+		copyAlphaMask(mask, tile);
+		return tile;
+	}
 
-		//box blur
-		int colsCount = bitmap.getWidth();
-		int rowsCount = bitmap.getHeight();
-
-		for(int row = 0; row < rowsCount; row++) {
-			for(int col = 0; col < colsCount; col++) {
-				float sumAlpha = 0;
-				float sumRed = 0;
-				float sumGreen = 0;
-				float sumBlue = 0;
-				for(int k = col - aSize; k <= col + aSize; k++) {
-					int x = k;
-					if(x < 0) {x = Math.abs(x);}
-					if(x >= colsCount) {x = (colsCount - 1) - (x - colsCount);}
-
-					int pixel = bitmap.getPixel(x, row);
-
-					int alpha = Color.alpha(pixel);
-					int red = Color.red(pixel);
-					int green = Color.green(pixel);
-					int blue = Color.blue(pixel);
-
-					float resultAlpha = (float)alpha * kernel;
-					float resultRed = (float)red * kernel;
-					float resultGreen = (float)green * kernel;
-					float resultBlue = (float)blue * kernel;
-
-					sumAlpha += resultAlpha;
-					sumRed += resultRed;
-					sumGreen += resultGreen;
-					sumBlue += resultBlue;
-				}
-				bitmap.setPixel(col, row, Color.argb((int)sumAlpha, (int)sumRed, (int)sumGreen, (int)sumBlue));
-			}
+	/**
+	 * Copies the alpha channel of the passed in bitmap into an AlphaMask without row padding.
+	 * @param aBitmap - bitmap from which to take the alpha channel. ALPHA_8 bitmaps are copied directly.
+	 * @return AlphaMask - the alpha values of the bitmap.
+	 */
+	public static AlphaMask extractAlphaMask(Bitmap aBitmap)
+	{
+		Bitmap bitmapAlpha = (aBitmap.getConfig() == Config.ALPHA_8) ? aBitmap : aBitmap.extractAlpha();
+		int width = bitmapAlpha.getWidth();
+		int height = bitmapAlpha.getHeight();
+		int rowBytes = bitmapAlpha.getRowBytes();
+
+		ByteBuffer buffer = ByteBuffer.allocate(rowBytes * height);
+		bitmapAlpha.copyPixelsToBuffer(buffer);
+		if(bitmapAlpha != aBitmap) {bitmapAlpha.recycle();}
+
+		if(rowBytes == width) {
+			return new AlphaMask(width, height, buffer.array());
 		}
+		AlphaMask mask = new AlphaMask(width, height);
+		for(int row = 0; row < height; row++) {
+			System.arraycopy(buffer.array(), row * rowBytes, mask.pixels, row * width, width);
+		}
+		return mask;
+	}
 
-		for(int col = 0; col < colsCount; col++) {
-			for(int row = 0; row < rowsCount; row++) {
-				float sumAlpha = 0;
-				float sumRed = 0;
-				float sumGreen = 0;
-				float sumBlue = 0;
-				for(int k = row - aSize; k <= row + aSize; k++) {
-					int y = k;
-					if(y < 0) {y = Math.abs(y);}
-					if(y >= rowsCount) {y = (rowsCount - 1) - (y - rowsCount);}
-
-					int pixel = bitmap.getPixel(col, y);
-
-					int alpha = Color.alpha(pixel);
-					int red = Color.red(pixel);
-					int green = Color.green(pixel);
-					int blue = Color.blue(pixel);
-
-					float resultAlpha = (float)alpha * kernel;
-					float resultRed = (float)red * kernel;
-					float resultGreen = (float)green * kernel;
-					float resultBlue = (float)blue * kernel;
-
-					sumAlpha += resultAlpha;
-					sumRed += resultRed;
-					sumGreen += resultGreen;
-					sumBlue += resultBlue;
-				}
-				bitmap.setPixel(col, row, Color.argb((int)sumAlpha, (int)sumRed, (int)sumGreen, (int)sumBlue));
-			}
+	/**
+	 * Copies the alpha values of the mask into an ALPHA_8 bitmap with the same size.
+	 * @param aMask - mask to copy.
+	 * @param aBitmapAlpha - ALPHA_8 bitmap to copy into.
+	 * @return void.
+	 */
+	public static void copyAlphaMask(AlphaMask aMask, Bitmap aBitmapAlpha)
+	{
+		int rowBytes = aBitmapAlpha.getRowBytes();
+		if(rowBytes == aMask.width) {
+			aBitmapAlpha.copyPixelsFromBuffer(ByteBuffer.wrap(aMask.pixels, 0, aMask.width * aMask.height));
+			return;
 		}
 
-		canvas.drawBitmap(bitmap, rectSrc, rectDest, null);
-		return bitmap;
+		byte[] bytes = new byte[rowBytes * aMask.height];
+		for(int row = 0; row < aMask.height; row++) {
+			System.arraycopy(aMask.pixels, row * aMask.width, bytes, row * rowBytes, aMask.width);
+		}
+		aBitmapAlpha.copyPixelsFromBuffer(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Draws an ALPHA_8 shadow mask tinted with the shadow color.
+	 * @param aCanvas - canvas to draw on.
+	 * @param aBitmapMask - ALPHA_8 mask of the shadow.
+	 * @param aShadowColor - color of the shadow.
+	 * @return void.
+	 */
+	public static void drawShadowMask(Canvas aCanvas, Bitmap aBitmapMask, int aShadowColor)
+	{
+		Paint paint = new Paint();
+		paint.setColor(aShadowColor);
+		aCanvas.drawBitmap(aBitmapMask, 0, 0, paint);
+	}
+
+	/**
+	 * Blurs an alpha mask in place using ScriptIntrinsicBlur with a single channel allocation.
+	 * Creates and destroys a RenderScript context on every call, RenderScriptBlurBackend keeps one for repeated blurs.
+	 * @param aCtx - context for RenderScript.
+	 * @param aMask - mask to blur.
+	 * @param aSize - blur radius, RenderScript supports 0 < aSize <= 25.
+	 * @return void.
+	 */
+	public static void gaussianBlur(Context aCtx, AlphaMask aMask, int aSize)
+	{
+		RenderScript rs = RenderScript.create(aCtx);
+		Type type = Type.createXY(rs, Element.U8(rs), aMask.width, aMask.height);
+		final Allocation input = Allocation.createTyped(rs, type);
+		final Allocation output = Allocation.createTyped(rs, type);
+		final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(rs, Element.U8(rs));
+		input.copyFrom(aMask.pixels);
+		script.setRadius(aSize);
+		script.setInput(input);
+		script.forEach(output);
+		output.copyTo(aMask.pixels);
+
+		script.destroy();
+		input.destroy();
+		output.destroy();
+		rs.destroy();
 	}
 
 	public static Bitmap gaussianBlur(Context aCtx, Bitmap aBitmap, int aSize)
@@ -792,6 +2339,10 @@ public class ShadowViewDecorator {
 		script.forEach(output);
 		output.copyTo(bitmapRet);
 
+		script.destroy();
+		input.destroy();
+		output.destroy();
+		rs.destroy();
 		return bitmapRet;
 	}
 }
@@ -0,0 +1,141 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a blur pass into stripes of rows or columns and runs them on an ExecutorService.
+ * Images smaller than the minimum pixels count, or a runner without an executor, run on the calling thread.
+ * The current CancellationToken of the calling thread is checked before and after every pass and between chunks
+ * of about kCHUNK_PIXELS pixels within each stripe, so a superseded job stops within a few milliseconds
+ * also on a single thread.
+ */
+public class StripeRunner {
+
+	/**
+	 * Work for the rows or columns from aStart (inclusive) to aEnd (exclusive).
+	 */
+	public interface Stripe {
+		void run(int aStart, int aEnd);
+	}
+
+	public static final int DEFAULT_MIN_PIXELS = 256 * 256;
+	/** Pixels run between two checks of the cancellation, 64 rows of a 1024 pixels wide image. */
+	private static final int kCHUNK_PIXELS = 64 * 1024;
+
+	private volatile ExecutorService mExecutor;
+	private volatile int mStripesCount;
+	private volatile int mMinPixels;
+
+	/**
+	 * Creates a runner which runs everything on the calling thread.
+	 */
+	public StripeRunner()
+	{
+		this(null, 1, DEFAULT_MIN_PIXELS);
+	}
+
+	/**
+	 * @param aExecutor - executor for the stripes, null to run on the calling thread.
+	 * @param aStripesCount - count of stripes to split each pass into, usually the count of cores.
+	 * @param aMinPixels - images with less pixels are blurred on the calling thread.
+	 */
+	public StripeRunner(ExecutorService aExecutor, int aStripesCount, int aMinPixels)
+	{
+		super();
+		setExecutor(aExecutor, aStripesCount, aMinPixels);
+	}
+
+	/**
+	 * Changes the executor used for the stripes.
+	 * @param aExecutor - executor for the stripes, null to run on the calling thread.
+	 * @param aStripesCount - count of stripes to split each pass into, usually the count of cores.
+	 * @param aMinPixels - images with less pixels are blurred on the calling thread.
+	 * @return void.
+	 */
+	public void setExecutor(ExecutorService aExecutor, int aStripesCount, int aMinPixels)
+	{
+		mExecutor = aExecutor;
+		mStripesCount = Math.max(1, aStripesCount);
+		mMinPixels = aMinPixels;
+	}
+
+	/**
+	 * Runs aStripe over 0 .. aCount - 1, split in stripes when the image is large enough.
+	 * The last stripe runs on the calling thread, the method returns when all stripes are done.
+	 * @param aCount - count of rows or columns.
+	 * @param aPixelsCount - count of pixels of the image, compared with the minimum pixels count.
+	 * @param aStripe - the work to run.
+	 * @return void.
+	 * @throws CancellationException - if the job running on the calling thread was cancelled.
+	 */
+	public void run(int aCount, int aPixelsCount, final Stripe aStripe)
+	{
+		final CancellationToken token = CancellationToken.current();
+		if(token != null) {token.throwIfCancelled();}
+
+		/* without a job to cancel the chunks would only add calls */
+		final int chunkSize = (token == null) ? Math.max(aCount, 1)
+				: (int)Math.max(1L, ((long)kCHUNK_PIXELS * aCount) / Math.max(aPixelsCount, 1));
+		ExecutorService executor = mExecutor;
+		int stripesCount = Math.min(mStripesCount, aCount);
+		if(executor == null || stripesCount <= 1 || aPixelsCount < mMinPixels) {
+			runChunks(token, aStripe, 0, aCount, chunkSize);
+			if(token != null) {token.throwIfCancelled();}
+			return;
+		}
+
+		int stripeSize = (aCount + stripesCount - 1) / stripesCount;
+		List<Future<?>> futures = new ArrayList<Future<?>>(stripesCount);
+		int start = 0;
+		while(start + stripeSize < aCount) {
+			final int stripeStart = start;
+			final int stripeEnd = start + stripeSize;
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					runChunks(token, aStripe, stripeStart, stripeEnd, chunkSize);
+				}
+			}));
+			start = stripeEnd;
+		}
+		runChunks(token, aStripe, start, aCount, chunkSize);
+
+		for(Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for(Future<?> futureStripe : futures) {
+					futureStripe.cancel(false);
+				}
+				if(token != null && token.isCancelled()) {throw new CancellationException("Decoration job was cancelled");}
+				throw new IllegalStateException("Interrupted while waiting for blur stripes", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Blur stripe failed", e.getCause());
+			}
+		}
+		if(token != null) {token.throwIfCancelled();}
+	}
+
+	/**
+	 * Runs the rows or columns from aStart to aEnd in chunks, stopping before the next chunk once the job is cancelled.
+	 * @param aToken - token of the job, or null.
+	 * @param aStripe - the work to run.
+	 * @param aStart - first row or column, inclusive.
+	 * @param aEnd - last row or column, exclusive.
+	 * @param aChunkSize - rows or columns of a chunk.
+	 * @return void.
+	 */
+	private static void runChunks(CancellationToken aToken, Stripe aStripe, int aStart, int aEnd, int aChunkSize)
+	{
+		for(int start = aStart; start < aEnd; start += aChunkSize) {
+			if(aToken != null && aToken.isCancelled()) {return;}
+			aStripe.run(start, Math.min(start + aChunkSize, aEnd));
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.blogspot.techzealous.shadowviewdecorator.benchmark;
+
+import com.blogspot.techzealous.shadowviewdecorator.AlphaMask;
+import com.blogspot.techzealous.shadowviewdecorator.BlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.BoxBlur;
+import com.blogspot.techzealous.shadowviewdecorator.BoxBlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.BoxGaussianBlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.MaskScaler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blur kernels on the mask of a rounded rectangle background with room for the shadow around it.
+ * box - BoxBlurBackend, gaussian - BoxGaussianBlurBackend, gaussianDownsample - BoxGaussianBlurBackend
+ * on a mask shrunk by MaskScaler, argb - BoxBlur.blurArgb as used by ShadowViewDecorator.boxBlur.
+ * The verticalPass parameter selects how the vertical passes walk the image: transposed - as the kernels run them,
+ * over the rows of a transposed copy, columns - down the columns of the row major image, as they ran before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlurBenchmark {
+
+	@Param({"48x48", "320x48", "540x960", "1080x1920"})
+	public String size;
+
+	@Param({"2", "8", "25", "64"})
+	public int radius;
+
+	@Param({"box", "gaussian", "gaussianDownsample", "argb"})
+	public String algorithm;
+
+	@Param({"transposed", "columns"})
+	public String verticalPass;
+
+	private AlphaMask mTemplate;
+	private AlphaMask mMask;
+	private int[] mPixelsTemplate;
+	private int[] mPixels;
+	private BlurBackend mBlurBackend;
+	private int mFactor;
+	private boolean mIsColumns;
+
+	@Setup
+	public void setup()
+	{
+		int[] dimensions = Shapes.parseSize(size);
+		AlphaMask shape = Shapes.roundRect(dimensions[0], dimensions[1], Math.min(dimensions[0], dimensions[1]) / 4);
+		mTemplate = new AlphaMask(dimensions[0] + (radius * 2), dimensions[1] + (radius * 2));
+		ReferenceKernels.drawScaled(shape, mTemplate, radius, radius, radius + shape.width, radius + shape.height, 255);
+		mMask = new AlphaMask(mTemplate.width, mTemplate.height);
+		mPixelsTemplate = Shapes.fill(mTemplate, 0xFF000000);
+		mPixels = new int[mPixelsTemplate.length];
+
+		mBlurBackend = algorithm.equals("box") ? new BoxBlurBackend() : new BoxGaussianBlurBackend();
+		mFactor = algorithm.equals("gaussianDownsample") ? MaskScaler.factorForRadius(radius) : 1;
+		mIsColumns = verticalPass.equals("columns");
+	}
+
+	@Benchmark
+	public Object blur()
+	{
+		if(algorithm.equals("argb")) {
+			System.arraycopy(mPixelsTemplate, 0, mPixels, 0, mPixels.length);
+			if(mIsColumns) {
+				int[] temp = new int[mPixels.length];
+				BoxBlur.blurArgbRows(mPixels, temp, mTemplate.width, mTemplate.height, radius);
+				BoxBlur.blurArgbColumns(temp, mPixels, mTemplate.width, mTemplate.height, radius);
+			} else {
+				BoxBlur.blurArgb(mPixels, mTemplate.width, mTemplate.height, radius);
+			}
+			return mPixels;
+		}
+
+		System.arraycopy(mTemplate.pixels, 0, mMask.pixels, 0, mMask.pixels.length);
+		AlphaMask mask = (mFactor == 1) ? mMask : MaskScaler.downsample(mMask, mFactor);
+		int radiusScaled = (mFactor == 1) ? radius : mBlurBackend.scaleRadius(radius, mFactor);
+		if(mIsColumns) {
+			blurColumns(mask, radiusScaled);
+		} else {
+			mBlurBackend.blur(mask, radiusScaled);
+		}
+		return mask;
+	}
+
+	/**
+	 * The blur of the backend with its vertical passes walking down the columns, between the horizontal passes.
+	 */
+	private void blurColumns(AlphaMask aMask, int aRadius)
+	{
+		int[] sizes = algorithm.equals("box") ? new int[] {(aRadius * 2) + 1}
+				: BoxGaussianBlurBackend.boxSizesForSigma(BoxGaussianBlurBackend.sigmaForRadius(aRadius), 3);
+		byte[] temp = new byte[aMask.width * aMask.height];
+		for(int size : sizes) {
+			BoxBlur.blurAlphaRows(aMask.pixels, temp, aMask.width, aMask.height, size / 2);
+			BoxBlur.blurAlphaColumns(temp, aMask.pixels, aMask.width, aMask.height, size / 2);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.blogspot.techzealous.shadowviewdecorator.benchmark;
+
+import com.blogspot.techzealous.shadowviewdecorator.AlphaMask;
+
+/**
+ * Pure Java versions of the steps which ShadowViewDecorator runs through Canvas, so they can be measured off device.
+ * They do the same amount of work per pixel as the Canvas calls without filtering, not the same as Skia's vector code.
+ */
+public class ReferenceKernels {
+
+	private ReferenceKernels() {}
+
+	/**
+	 * The layered shadow as dropShadow and createShadow drew it before LayeredShadow: the alpha of the background
+	 * is drawn aLayersCount times, each time shrunk by aShadowSize / aLayersCount on every side and with aAlphaStep more alpha.
+	 * @param aSrc - alpha of the background.
+	 * @param aDst - mask of the shadow, the background is scaled to its size for the first layer.
+	 * @param aShadowSize - size of the shadow in pixels.
+	 * @param aLayersCount - count of layers.
+	 * @param aAlphaInit - alpha of the first layer.
+	 * @param aAlphaStep - alpha added with each layer.
+	 * @return void.
+	 */
+	public static void drawLayers(AlphaMask aSrc, AlphaMask aDst, int aShadowSize, int aLayersCount, int aAlphaInit, int aAlphaStep)
+	{
+		int add = aShadowSize / ((aLayersCount == 0) ? 1 : aLayersCount);
+		int left = 0;
+		int top = 0;
+		int right = aDst.width;
+		int bottom = aDst.height;
+		int alpha = aAlphaInit;
+		for(int layer = 0; layer < aLayersCount; layer++) {
+			drawScaled(aSrc, aDst, left, top, right, bottom, alpha);
+			alpha = Math.min(alpha + aAlphaStep, 255);
+			left += add;
+			top += add;
+			right -= add;
+			bottom -= add;
+		}
+	}
+
+	/**
+	 * Draws the source mask scaled into the destination rectangle without filtering, blending with source over.
+	 * @return void.
+	 */
+	public static void drawScaled(AlphaMask aSrc, AlphaMask aDst, int aLeft, int aTop, int aRight, int aBottom, int aAlpha)
+	{
+		int width = aRight - aLeft;
+		int height = aBottom - aTop;
+		if(width <= 0 || height <= 0) {return;}
+
+		int rowStart = Math.max(aTop, 0);
+		int rowEnd = Math.min(aBottom, aDst.height);
+		int colStart = Math.max(aLeft, 0);
+		int colEnd = Math.min(aRight, aDst.width);
+		for(int row = rowStart; row < rowEnd; row++) {
+			int srcOffset = (((row - aTop) * aSrc.height) / height) * aSrc.width;
+			int dstOffset = row * aDst.width;
+			for(int col = colStart; col < colEnd; col++) {
+				int src = ((aSrc.pixels[srcOffset + (((col - aLeft) * aSrc.width) / width)] & 0xFF) * aAlpha) / 255;
+				int dst = aDst.pixels[dstOffset + col] & 0xFF;
+				aDst.pixels[dstOffset + col] = (byte)(src + ((dst * (255 - src)) / 255));
+			}
+		}
+	}
+
+	/**
+	 * The compose step: the mask tinted with the shadow color, with the background drawn on top at the given position.
+	 * @param aMask - blurred mask of the shadow.
+	 * @param aShadowColor - color of the shadow.
+	 * @param aBackground - premultiplied ARGB pixels of the background.
+	 * @param aBackgroundWidth - width of the background.
+	 * @param aBackgroundHeight - height of the background.
+	 * @param aLeft - left position of the background.
+	 * @param aTop - top position of the background.
+	 * @param aDst - premultiplied ARGB pixels with the size of the mask.
+	 * @return void.
+	 */
+	public static void compose(AlphaMask aMask, int aShadowColor, int[] aBackground, int aBackgroundWidth, int aBackgroundHeight,
+			int aLeft, int aTop, int[] aDst)
+	{
+		int colorAlpha = aShadowColor >>> 24;
+		int count = aMask.width * aMask.height;
+		for(int x = 0; x < count; x++) {
+			aDst[x] = premultiply(aShadowColor, ((aMask.pixels[x] & 0xFF) * colorAlpha) / 255);
+		}
+
+		for(int row = 0; row < aBackgroundHeight; row++) {
+			int dstRow = row + aTop;
+			if(dstRow < 0 || dstRow >= aMask.height) {continue;}
+			for(int col = 0; col < aBackgroundWidth; col++) {
+				int dstCol = col + aLeft;
+				if(dstCol < 0 || dstCol >= aMask.width) {continue;}
+				int index = (dstRow * aMask.width) + dstCol;
+				aDst[index] = srcOver(aBackground[(row * aBackgroundWidth) + col], aDst[index]);
+			}
+		}
+	}
+
+	/**
+	 * @param aColor - color, its alpha is ignored.
+	 * @param aAlpha - alpha 0-255.
+	 * @return int - the color with the alpha, premultiplied.
+	 */
+	public static int premultiply(int aColor, int aAlpha)
+	{
+		int red = (((aColor >> 16) & 0xFF) * aAlpha) / 255;
+		int green = (((aColor >> 8) & 0xFF) * aAlpha) / 255;
+		int blue = ((aColor & 0xFF) * aAlpha) / 255;
+		return (aAlpha << 24) | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * @param aSrc - premultiplied source pixel.
+	 * @param aDst - premultiplied destination pixel.
+	 * @return int - source over destination.
+	 */
+	public static int srcOver(int aSrc, int aDst)
+	{
+		int inverse = 255 - (aSrc >>> 24);
+		if(inverse == 0) {return aSrc;}
+		int alpha = (aSrc >>> 24) + (((aDst >>> 24) * inverse) / 255);
+		int red = ((aSrc >> 16) & 0xFF) + ((((aDst >> 16) & 0xFF) * inverse) / 255);
+		int green = ((aSrc >> 8) & 0xFF) + ((((aDst >> 8) & 0xFF) * inverse) / 255);
+		int blue = (aSrc & 0xFF) + (((aDst & 0xFF) * inverse) / 255);
+		return (alpha << 24) | (red << 16) | (green << 8) | blue;
+	}
+}
@@ -0,0 +1,97 @@
+package com.blogspot.techzealous.shadowviewdecorator.benchmark;
+
+import com.blogspot.techzealous.shadowviewdecorator.AlphaMask;
+import com.blogspot.techzealous.shadowviewdecorator.AnalyticShadow;
+import com.blogspot.techzealous.shadowviewdecorator.BlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.BoxBlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.BoxGaussianBlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.DistanceField;
+import com.blogspot.techzealous.shadowviewdecorator.LayeredShadow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole expanded shadow as created by ShadowViewDecorator: the mask is rasterized from the background,
+ * layered or blurred, tinted and composed with the background into a new ARGB buffer.
+ * The layers parameter only changes the layers algorithms: layers is the single pass LayeredShadow kernel,
+ * layersloop the previous loop with one blit per layer, kept for comparison. The analytic algorithm computes the blurred rounded rectangle
+ * in closed form instead of rasterizing and blurring it. The distancefield algorithm renders from the distance field
+ * of the shape, computed once in setup as it is cached per background.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShadowBenchmark {
+
+	@Param({"48x48", "320x48", "540x960", "1080x1920"})
+	public String size;
+
+	@Param({"4", "16", "48"})
+	public int radius;
+
+	@Param({"4", "16"})
+	public int layers;
+
+	@Param({"layers", "layersloop", "box", "gaussian", "analytic", "distancefield"})
+	public String algorithm;
+
+	private AlphaMask mShape;
+	private int[] mBackground;
+	private BlurBackend mBlurBackend;
+	private DistanceField mField;
+
+	@Setup
+	public void setup()
+	{
+		int[] dimensions = Shapes.parseSize(size);
+		mShape = Shapes.roundRect(dimensions[0], dimensions[1], Math.min(dimensions[0], dimensions[1]) / 4);
+		mBackground = Shapes.fill(mShape, 0xFF2196F3);
+		mBlurBackend = algorithm.equals("box") ? new BoxBlurBackend() : new BoxGaussianBlurBackend();
+		mField = algorithm.equals("distancefield") ? DistanceField.compute(mShape) : null;
+	}
+
+	@Benchmark
+	public int[] shadow()
+	{
+		int width = mShape.width + (radius * 2);
+		int height = mShape.height + (radius * 2);
+		AlphaMask mask = null;
+		if(algorithm.equals("analytic")) {
+			mask = AnalyticShadow.roundRect(width, height, radius, radius, radius + mShape.width, radius + mShape.height,
+					Math.min(mShape.width, mShape.height) / 4, BoxGaussianBlurBackend.sigmaForRadius(radius));
+		} else if(algorithm.equals("distancefield")) {
+			mask = new AlphaMask(width, height);
+			mField.render(mask, radius, radius, 0, radius, DistanceField.FALLOFF_GAUSSIAN);
+		} else if(algorithm.equals("layers")) {
+			mask = new AlphaMask(width, height);
+			ReferenceKernels.drawScaled(mShape, mask, 0, 0, width, height, 255);
+			LayeredShadow.render(mask, radius, layers, 20, 5);
+		} else if(algorithm.equals("layersloop")) {
+			mask = new AlphaMask(width, height);
+			ReferenceKernels.drawLayers(mShape, mask, radius, layers, 20, 5);
+		} else {
+			mask = new AlphaMask(width, height);
+			ReferenceKernels.drawScaled(mShape, mask, radius, radius, radius + mShape.width, radius + mShape.height, 255);
+			mBlurBackend.blur(mask, radius);
+		}
+
+		int[] pixels = new int[width * height];
+		ReferenceKernels.compose(mask, 0xFF000000, mBackground, mShape.width, mShape.height, radius, radius, pixels);
+		return pixels;
+	}
+}
@@ -0,0 +1,65 @@
+package com.blogspot.techzealous.shadowviewdecorator.benchmark;
+
+import com.blogspot.techzealous.shadowviewdecorator.AlphaMask;
+
+/**
+ * Backgrounds for the benchmarks, rasterized without android.graphics.
+ */
+public class Shapes {
+
+	private Shapes() {}
+
+	/**
+	 * @param aSize - size as "widthxheight", for example "1080x1920".
+	 * @return int[] - width and height.
+	 */
+	public static int[] parseSize(String aSize)
+	{
+		int separator = aSize.indexOf('x');
+		return new int[]{Integer.parseInt(aSize.substring(0, separator)), Integer.parseInt(aSize.substring(separator + 1))};
+	}
+
+	/**
+	 * Rasterizes a rounded rectangle filling the whole mask, with 4x4 supersampled edges.
+	 * @param aWidth - width of the mask.
+	 * @param aHeight - height of the mask.
+	 * @param aCornerRadius - corner radius in pixels.
+	 * @return AlphaMask - the shape.
+	 */
+	public static AlphaMask roundRect(int aWidth, int aHeight, int aCornerRadius)
+	{
+		AlphaMask mask = new AlphaMask(aWidth, aHeight);
+		float radius = Math.min(aCornerRadius, Math.min(aWidth, aHeight) / 2f);
+		for(int y = 0; y < aHeight; y++) {
+			for(int x = 0; x < aWidth; x++) {
+				int covered = 0;
+				for(int sy = 0; sy < 4; sy++) {
+					for(int sx = 0; sx < 4; sx++) {
+						float px = x + ((sx + 0.5f) / 4f);
+						float py = y + ((sy + 0.5f) / 4f);
+						float dx = Math.max(Math.max(radius - px, px - (aWidth - radius)), 0f);
+						float dy = Math.max(Math.max(radius - py, py - (aHeight - radius)), 0f);
+						if((dx * dx) + (dy * dy) <= radius * radius) {covered++;}
+					}
+				}
+				mask.pixels[(y * aWidth) + x] = (byte)((covered * 255) / 16);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param aMask - shape of the background.
+	 * @param aColor - opaque color of the background.
+	 * @return int[] - premultiplied ARGB pixels of the shape filled with the color.
+	 */
+	public static int[] fill(AlphaMask aMask, int aColor)
+	{
+		int count = aMask.width * aMask.height;
+		int[] pixels = new int[count];
+		for(int x = 0; x < count; x++) {
+			pixels[x] = ReferenceKernels.premultiply(aColor, aMask.pixels[x] & 0xFF);
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,72 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import com.blogspot.techzealous.shadowviewdecorator.benchmark.ReferenceKernels;
+import com.blogspot.techzealous.shadowviewdecorator.benchmark.Shapes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares AnalyticShadow with BoxGaussianBlurBackend blurring the rasterized shape, within the bounds of its class doc:
+ * every pixel within kMAX_ERROR and the mean difference below kMAX_MEAN_ERROR.
+ * The corner radii go up to circles, so the corner slices are checked as well as the straight edges.
+ */
+public class AnalyticShadowTest {
+
+	private static final int[][] kSIZES = {{48, 48}, {320, 48}, {120, 200}, {9, 9}, {33, 70}};
+	private static final int[] kRADII = {2, 3, 4, 6, 8, 12, 16, 24, 32, 48};
+	private static final int kMAX_ERROR = 12;
+	private static final float kMAX_MEAN_ERROR = 1f;
+
+	@Test
+	public void rectMatchesBoxGaussian()
+	{
+		for(int[] size : kSIZES) {
+			for(int radius : kRADII) {
+				assertMatches(size[0], size[1], 0, radius);
+			}
+		}
+	}
+
+	@Test
+	public void roundRectMatchesBoxGaussian()
+	{
+		for(int[] size : kSIZES) {
+			int cornerMax = Math.min(size[0], size[1]) / 2;
+			int cornerStep = Math.max(1, cornerMax / 5);
+			for(int corner = cornerStep; corner <= cornerMax; corner += cornerStep) {
+				for(int radius : kRADII) {
+					assertMatches(size[0], size[1], corner, radius);
+				}
+			}
+		}
+	}
+
+	private static void assertMatches(int aWidth, int aHeight, int aCornerRadius, int aRadius)
+	{
+		int padding = (aRadius * 3) + 4;
+		int width = aWidth + (padding * 2);
+		int height = aHeight + (padding * 2);
+		AlphaMask expected = new AlphaMask(width, height);
+		ReferenceKernels.drawScaled(Shapes.roundRect(aWidth, aHeight, aCornerRadius), expected,
+				padding, padding, padding + aWidth, padding + aHeight, 255);
+		new BoxGaussianBlurBackend().blur(expected, aRadius);
+
+		float sigma = BoxGaussianBlurBackend.sigmaForRadius(aRadius);
+		AlphaMask mask = aCornerRadius == 0
+				? AnalyticShadow.rect(width, height, padding, padding, padding + aWidth, padding + aHeight, sigma)
+				: AnalyticShadow.roundRect(width, height, padding, padding, padding + aWidth, padding + aHeight,
+						aCornerRadius, sigma);
+
+		String message = aWidth + "x" + aHeight + " corner " + aCornerRadius + " radius " + aRadius;
+		long sum = 0;
+		for(int x = 0; x < width * height; x++) {
+			int difference = Math.abs((mask.pixels[x] & 0xFF) - (expected.pixels[x] & 0xFF));
+			assertTrue(message + ", pixel " + x + " differs by " + difference, difference <= kMAX_ERROR);
+			sum += difference;
+		}
+		float mean = sum / (float)(width * height);
+		assertTrue(message + ", mean difference " + mean, mean < kMAX_MEAN_ERROR);
+	}
+}
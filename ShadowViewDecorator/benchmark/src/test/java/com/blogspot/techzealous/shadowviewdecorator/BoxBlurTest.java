@@ -0,0 +1,146 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares BoxBlur with a per pixel float box blur, the kernel of the original boxBlur reading every pass from a copy
+ * and rounding instead of truncating. The original read the pixels it had just written, which smeared the blur
+ * to the right and down, BoxBlur does not reproduce that.
+ */
+public class BoxBlurTest {
+
+	private static final int kWIDTH = 120;
+	private static final int kHEIGHT = 80;
+	private static final int[] kRADII = {1, 2, 5, 16, 50};
+
+	@Test
+	public void blurArgbMatchesReference()
+	{
+		for(int radius : kRADII) {
+			int[] pixels = createRectangle(0xFF3366CC, 0x00FFFFFF);
+			int[] expected = referenceBlurArgb(pixels, kWIDTH, kHEIGHT, radius);
+			BoxBlur.blurArgb(pixels, kWIDTH, kHEIGHT, radius);
+			assertWithinOne("radius " + radius, expected, pixels);
+		}
+	}
+
+	@Test
+	public void blurArgbMatchesReferenceOnNoise()
+	{
+		Random random = new Random(1);
+		for(int radius : kRADII) {
+			int[] pixels = new int[kWIDTH * kHEIGHT];
+			for(int x = 0; x < pixels.length; x++) {
+				pixels[x] = random.nextInt();
+			}
+			int[] expected = referenceBlurArgb(pixels, kWIDTH, kHEIGHT, radius);
+			BoxBlur.blurArgb(pixels, kWIDTH, kHEIGHT, radius);
+			assertWithinOne("radius " + radius, expected, pixels);
+		}
+	}
+
+	@Test
+	public void blurAlphaMatchesReference()
+	{
+		for(int radius : kRADII) {
+			int[] pixels = createRectangle(0xFF000000, 0);
+			AlphaMask mask = new AlphaMask(kWIDTH, kHEIGHT);
+			for(int x = 0; x < pixels.length; x++) {
+				mask.pixels[x] = (byte)(pixels[x] >>> 24);
+			}
+			int[] expected = referenceBlurArgb(pixels, kWIDTH, kHEIGHT, radius, false);
+			BoxBlur.blurAlpha(mask, radius);
+
+			int[] actual = new int[pixels.length];
+			for(int x = 0; x < actual.length; x++) {
+				actual[x] = (mask.pixels[x] & 0xFF) << 24;
+			}
+			assertWithinOne("radius " + radius, expected, actual);
+		}
+	}
+
+	/**
+	 * @return int[] - kWIDTH x kHEIGHT pixels of aBackground with an opaque aColor rectangle inset by 20 pixels.
+	 */
+	private static int[] createRectangle(int aColor, int aBackground)
+	{
+		int[] pixels = new int[kWIDTH * kHEIGHT];
+		for(int row = 0; row < kHEIGHT; row++) {
+			for(int col = 0; col < kWIDTH; col++) {
+				boolean isInside = row >= 20 && row < kHEIGHT - 20 && col >= 20 && col < kWIDTH - 20;
+				pixels[(row * kWIDTH) + col] = isInside ? aColor : aBackground;
+			}
+		}
+		return pixels;
+	}
+
+	private static int[] referenceBlurArgb(int[] aPixels, int aWidth, int aHeight, int aRadius)
+	{
+		return referenceBlurArgb(aPixels, aWidth, aHeight, aRadius, true);
+	}
+
+	/**
+	 * @param aIsMirrored - if pixels outside of the image are mirrored back into it, as in blurArgb,
+	 * or transparent, as in blurAlpha.
+	 * @return int[] - the blurred pixels.
+	 */
+	private static int[] referenceBlurArgb(int[] aPixels, int aWidth, int aHeight, int aRadius, boolean aIsMirrored)
+	{
+		int[] rows = new int[aPixels.length];
+		int[] result = new int[aPixels.length];
+		for(int row = 0; row < aHeight; row++) {
+			for(int col = 0; col < aWidth; col++) {
+				rows[(row * aWidth) + col] = average(aPixels, row * aWidth, 1, aWidth, col, aRadius, aIsMirrored);
+			}
+		}
+		for(int col = 0; col < aWidth; col++) {
+			for(int row = 0; row < aHeight; row++) {
+				result[(row * aWidth) + col] = average(rows, col, aWidth, aHeight, row, aRadius, aIsMirrored);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Float average of the window around aCenter of a row or column of aCount pixels starting at aOffset.
+	 */
+	private static int average(int[] aPixels, int aOffset, int aStep, int aCount, int aCenter, int aRadius, boolean aIsMirrored)
+	{
+		float kernel = 1.0f / ((aRadius * 2) + 1);
+		float[] sums = new float[4];
+		for(int k = aCenter - aRadius; k <= aCenter + aRadius; k++) {
+			int x = k;
+			if(aIsMirrored) {
+				while(x < 0 || x >= aCount) {
+					if(x < 0) {x = Math.abs(x);}
+					if(x >= aCount) {x = (aCount - 1) - (x - aCount);}
+				}
+			} else if(x < 0 || x >= aCount) {
+				continue;
+			}
+			int pixel = aPixels[aOffset + (x * aStep)];
+			for(int channel = 0; channel < 4; channel++) {
+				sums[channel] += ((pixel >>> (24 - (channel * 8))) & 0xFF) * kernel;
+			}
+		}
+		int pixelRet = 0;
+		for(int channel = 0; channel < 4; channel++) {
+			pixelRet |= Math.round(sums[channel]) << (24 - (channel * 8));
+		}
+		return pixelRet;
+	}
+
+	private static void assertWithinOne(String aMessage, int[] aExpected, int[] aActual)
+	{
+		for(int x = 0; x < aExpected.length; x++) {
+			for(int shift = 0; shift < 32; shift += 8) {
+				int difference = Math.abs(((aExpected[x] >>> shift) & 0xFF) - ((aActual[x] >>> shift) & 0xFF));
+				assertTrue(aMessage + ", pixel " + x + " differs by " + difference, difference <= 1);
+			}
+		}
+	}
+}
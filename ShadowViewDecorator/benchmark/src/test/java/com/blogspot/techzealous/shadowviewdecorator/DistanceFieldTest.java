@@ -0,0 +1,120 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares DistanceField with brute force Euclidean distances on small binary masks. Around the mask there is a ring
+ * of outside pixels, so a shape touching the border is 0.5 pixels from its edge there, the same as inside the mask.
+ */
+public class DistanceFieldTest {
+
+	private static final float kEPSILON = 1e-4f;
+	/** Largest alpha error of the falloff table, which is sampled every 1/16 of a pixel, with a hard edge. */
+	private static final float kMAX_TABLE_ERROR = (255f / 32f) + 1f;
+
+	@Test
+	public void matchesBruteForceForShapeTouchingBorder()
+	{
+		AlphaMask mask = new AlphaMask(13, 9);
+		for(int y = 0; y < mask.height; y++) {
+			for(int x = 0; x < mask.width; x++) {
+				boolean disc = ((x - 2) * (x - 2)) + ((y - 3) * (y - 3)) <= 16;
+				boolean bar = x >= 8 && x <= 10 && y >= 5;
+				mask.pixels[(y * mask.width) + x] = (byte)((disc || bar) ? 255 : 0);
+			}
+		}
+		assertMatchesBruteForce(mask);
+	}
+
+	@Test
+	public void matchesBruteForceForScatteredPixels()
+	{
+		AlphaMask mask = new AlphaMask(16, 11);
+		Random random = new Random(7);
+		for(int x = 0; x < mask.width * mask.height; x++) {
+			mask.pixels[x] = (byte)(random.nextInt(5) == 0 ? 255 : 0);
+		}
+		assertMatchesBruteForce(mask);
+	}
+
+	@Test
+	public void allInsideMeasuresToBorder()
+	{
+		AlphaMask mask = new AlphaMask(7, 5);
+		for(int x = 0; x < mask.width * mask.height; x++) {
+			mask.pixels[x] = (byte)255;
+		}
+		assertMatchesBruteForce(mask);
+		assertEquals(-2.5f, DistanceField.compute(mask).getDistance(3, 2), kEPSILON);
+	}
+
+	@Test
+	public void negativeSpreadShrinksShape()
+	{
+		AlphaMask shape = new AlphaMask(14, 12);
+		for(int y = 0; y < shape.height; y++) {
+			for(int x = 0; x < shape.width; x++) {
+				boolean disc = ((x - 11) * (x - 11)) + ((y - 6) * (y - 6)) <= 4;
+				shape.pixels[(y * shape.width) + x] = (byte)((disc || x < 8) ? 255 : 0);
+			}
+		}
+		int spread = -3;
+		float[] expected = bruteForce(shape);
+		AlphaMask mask = new AlphaMask(shape.width, shape.height);
+		DistanceField.compute(shape).render(mask, 0, 0, spread, 0, DistanceField.FALLOFF_GAUSSIAN);
+		for(int x = 0; x < shape.width * shape.height; x++) {
+			float alpha = Math.max(0f, Math.min(1f, 0.5f - (expected[x] - spread))) * 255f;
+			assertEquals("pixel " + x, alpha, mask.pixels[x] & 0xFF, kMAX_TABLE_ERROR);
+		}
+		/* the bar along the left border loses 3 pixels on each side, the small disc disappears */
+		assertEquals(0, mask.pixels[(6 * shape.width) + 2] & 0xFF);
+		assertEquals(255, mask.pixels[(6 * shape.width) + 3] & 0xFF);
+		assertEquals(255, mask.pixels[(6 * shape.width) + 4] & 0xFF);
+		assertEquals(0, mask.pixels[(6 * shape.width) + 5] & 0xFF);
+		assertEquals(0, mask.pixels[(6 * shape.width) + 11] & 0xFF);
+	}
+
+	private static void assertMatchesBruteForce(AlphaMask aMask)
+	{
+		DistanceField field = DistanceField.compute(aMask);
+		float[] expected = bruteForce(aMask);
+		for(int y = 0; y < aMask.height; y++) {
+			for(int x = 0; x < aMask.width; x++) {
+				assertEquals("pixel " + x + "," + y, expected[(y * aMask.width) + x], field.getDistance(x, y), kEPSILON);
+			}
+		}
+	}
+
+	/**
+	 * @return float[] - distance from each pixel center to the nearest pixel center of the other side, minus 0.5,
+	 * negative inside. The ring around the mask is outside.
+	 */
+	private static float[] bruteForce(AlphaMask aMask)
+	{
+		float[] distancesRet = new float[aMask.width * aMask.height];
+		for(int y = 0; y < aMask.height; y++) {
+			for(int x = 0; x < aMask.width; x++) {
+				boolean inside = isInside(aMask, x, y);
+				double nearest = Double.MAX_VALUE;
+				for(int v = -1; v <= aMask.height; v++) {
+					for(int u = -1; u <= aMask.width; u++) {
+						if(isInside(aMask, u, v) == inside) {continue;}
+						nearest = Math.min(nearest, Math.sqrt(((u - x) * (u - x)) + ((v - y) * (v - y))));
+					}
+				}
+				distancesRet[(y * aMask.width) + x] = (float)(inside ? 0.5 - nearest : nearest - 0.5);
+			}
+		}
+		return distancesRet;
+	}
+
+	private static boolean isInside(AlphaMask aMask, int aX, int aY)
+	{
+		if(aX < 0 || aY < 0 || aX >= aMask.width || aY >= aMask.height) {return false;}
+		return (aMask.pixels[(aY * aMask.width) + aX] & 0xFF) >= 128;
+	}
+}
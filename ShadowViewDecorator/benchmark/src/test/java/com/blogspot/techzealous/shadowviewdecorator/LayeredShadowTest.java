@@ -0,0 +1,87 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import com.blogspot.techzealous.shadowviewdecorator.benchmark.ReferenceKernels;
+import com.blogspot.techzealous.shadowviewdecorator.benchmark.Shapes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares LayeredShadow with the layer loop it replaces, ReferenceKernels.drawLayers, within the bounds of its class doc:
+ * every pixel within two layer steps and the mean difference below kMAX_MEAN_ERROR.
+ */
+public class LayeredShadowTest {
+
+	private static final int[][] kSIZES = {{48, 48}, {320, 48}, {200, 120}};
+	private static final int[] kSHADOW_SIZES = {8, 16, 32};
+	/** Initial alpha and alpha step of the layers. */
+	private static final int[][] kALPHAS = {{20, 5}, {60, 30}, {10, 40}};
+	private static final float kMAX_MEAN_ERROR = 2.5f;
+
+	@Test
+	public void matchesLayerLoop()
+	{
+		for(int[] size : kSIZES) {
+			AlphaMask shape = Shapes.roundRect(size[0], size[1], Math.min(size[0], size[1]) / 4);
+			for(int shadowSize : kSHADOW_SIZES) {
+				for(int layers = 2; layers <= 8; layers++) {
+					for(int[] alphas : kALPHAS) {
+						assertMatches(shape, shadowSize, layers, alphas[0], alphas[1]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void noLayersClearsMask()
+	{
+		AlphaMask mask = Shapes.roundRect(20, 20, 5);
+		LayeredShadow.render(mask, 8, 0, 20, 5);
+		for(int x = 0; x < 20 * 20; x++) {
+			assertEquals(0, mask.pixels[x]);
+		}
+	}
+
+	private static void assertMatches(AlphaMask aShape, int aShadowSize, int aLayersCount, int aAlphaInit, int aAlphaStep)
+	{
+		int width = aShape.width + (aShadowSize * 2);
+		int height = aShape.height + (aShadowSize * 2);
+		AlphaMask mask = new AlphaMask(width, height);
+		ReferenceKernels.drawScaled(aShape, mask, 0, 0, width, height, 255);
+		LayeredShadow.render(mask, aShadowSize, aLayersCount, aAlphaInit, aAlphaStep);
+		AlphaMask expected = new AlphaMask(width, height);
+		ReferenceKernels.drawLayers(aShape, expected, aShadowSize, aLayersCount, aAlphaInit, aAlphaStep);
+
+		int bound = 2 * maxLayerStep(aLayersCount, aAlphaInit, aAlphaStep);
+		String message = aShape.width + "x" + aShape.height + " shadow " + aShadowSize + " layers " + aLayersCount
+				+ " alpha " + aAlphaInit + "/" + aAlphaStep;
+		long sum = 0;
+		for(int x = 0; x < width * height; x++) {
+			int difference = Math.abs((mask.pixels[x] & 0xFF) - (expected.pixels[x] & 0xFF));
+			assertTrue(message + ", pixel " + x + " differs by " + difference, difference <= bound);
+			sum += difference;
+		}
+		float mean = sum / (float)(width * height);
+		assertTrue(message + ", mean difference " + mean, mean < kMAX_MEAN_ERROR);
+	}
+
+	/**
+	 * @return int - largest alpha added by one layer blended over the layers below it.
+	 */
+	private static int maxLayerStep(int aLayersCount, int aAlphaInit, int aAlphaStep)
+	{
+		int stepRet = 0;
+		int alphaLayer = aAlphaInit;
+		int alpha = 0;
+		for(int x = 0; x < aLayersCount; x++) {
+			int alphaNext = alphaLayer + ((alpha * (255 - alphaLayer)) / 255);
+			stepRet = Math.max(stepRet, alphaNext - alpha);
+			alpha = alphaNext;
+			alphaLayer = Math.min(alphaLayer + aAlphaStep, 255);
+		}
+		return stepRet;
+	}
+}
@@ -0,0 +1,110 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the error bounds documented on MaskScaler: a rectangle downsampled, blurred and upsampled with bilinear filtering
+ * against the same rectangle blurred at full size, for radii around the thresholds of factorForRadius.
+ */
+public class MaskScalerTest {
+
+	private static final int[] kRADII = {15, 16, 17, 24, 31, 32, 33, 48, 63, 64, 65, 80, 128};
+	private static final int[] kSIZES = {7, 40, 121};
+	private static final int kMAX_ERROR_BOX = 18;
+	private static final int kMAX_ERROR_GAUSSIAN = 12;
+	private static final int kMAX_ERROR_FACTOR_2 = 10;
+
+	@Test
+	public void factorForRadiusThresholds()
+	{
+		assertEquals(1, MaskScaler.factorForRadius(15));
+		assertEquals(2, MaskScaler.factorForRadius(16));
+		assertEquals(2, MaskScaler.factorForRadius(31));
+		assertEquals(4, MaskScaler.factorForRadius(32));
+		assertEquals(4, MaskScaler.factorForRadius(63));
+		assertEquals(8, MaskScaler.factorForRadius(64));
+	}
+
+	@Test
+	public void boxBlurWithinBound()
+	{
+		assertWithinBound(new BoxBlurBackend(), kMAX_ERROR_BOX);
+	}
+
+	@Test
+	public void gaussianBlurWithinBound()
+	{
+		assertWithinBound(new BoxGaussianBlurBackend(), kMAX_ERROR_GAUSSIAN);
+	}
+
+	@Test
+	public void factor2WithinBound()
+	{
+		BlurBackend[] backends = {new BoxBlurBackend(), new BoxGaussianBlurBackend()};
+		for(BlurBackend backend : backends) {
+			for(int radius : kRADII) {
+				if(radius < 16) {continue;}
+				int error = maxError(backend, radius, 2);
+				assertTrue(backend.getClass().getSimpleName() + " radius " + radius + " differs by " + error,
+						error <= kMAX_ERROR_FACTOR_2);
+			}
+		}
+	}
+
+	private static void assertWithinBound(BlurBackend aBackend, int aMaxError)
+	{
+		for(int radius : kRADII) {
+			int factor = MaskScaler.factorForRadius(radius);
+			int error = maxError(aBackend, radius, factor);
+			int bound = (factor == 2) ? Math.min(aMaxError, kMAX_ERROR_FACTOR_2) : aMaxError;
+			assertTrue("radius " + radius + " factor " + factor + " differs by " + error, error <= bound);
+		}
+	}
+
+	/**
+	 * @return int - largest difference of the alpha over rectangles of several sizes and offsets from the factor grid.
+	 */
+	private static int maxError(BlurBackend aBackend, int aRadius, int aFactor)
+	{
+		int errorRet = 0;
+		for(int size : kSIZES) {
+			for(int offset = 0; offset < aFactor; offset += Math.max(1, aFactor / 4)) {
+				errorRet = Math.max(errorRet, error(aBackend, aRadius, aFactor, size, offset));
+			}
+		}
+		return errorRet;
+	}
+
+	private static int error(BlurBackend aBackend, int aRadius, int aFactor, int aSize, int aOffset)
+	{
+		int padding = (aRadius * 2) + aOffset;
+		int width = aSize + (padding * 2) + 3;
+		int height = (aSize / 2) + (padding * 2) + 5;
+		AlphaMask mask = createRectangle(width, height, padding, padding, padding + aSize, padding + (aSize / 2));
+		AlphaMask maskSmall = MaskScaler.downsample(mask, aFactor);
+
+		aBackend.blur(mask, aRadius);
+		aBackend.blur(maskSmall, aBackend.scaleRadius(aRadius, aFactor));
+		AlphaMask maskScaled = MaskScaler.upsampleBilinear(maskSmall, aFactor, width, height);
+
+		int errorRet = 0;
+		for(int x = 0; x < width * height; x++) {
+			errorRet = Math.max(errorRet, Math.abs((mask.pixels[x] & 0xFF) - (maskScaled.pixels[x] & 0xFF)));
+		}
+		return errorRet;
+	}
+
+	private static AlphaMask createRectangle(int aWidth, int aHeight, int aLeft, int aTop, int aRight, int aBottom)
+	{
+		AlphaMask maskRet = new AlphaMask(aWidth, aHeight);
+		for(int row = aTop; row < aBottom; row++) {
+			for(int col = aLeft; col < aRight; col++) {
+				maskRet.pixels[(row * aWidth) + col] = (byte)255;
+			}
+		}
+		return maskRet;
+	}
+}
@@ -0,0 +1,93 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the level positions of ShadowPyramid and that adding two weighted levels, as AnimatedShadowDrawable does,
+ * blends them linearly.
+ */
+public class ShadowPyramidTest {
+
+	private static final float kEPSILON = 1e-5f;
+
+	@Test
+	public void levelRadii()
+	{
+		int[] radii = ShadowPyramid.levelRadii(20);
+		int[] expected = {0, 1, 2, 4, 8, 16, 32};
+		assertEquals(expected.length, radii.length);
+		for(int x = 0; x < expected.length; x++) {
+			assertEquals(expected[x], radii[x]);
+		}
+	}
+
+	@Test
+	public void levelPositionAtAndBetweenLevels()
+	{
+		int[] radii = {0, 1, 2, 4, 8};
+		assertEquals(0f, ShadowPyramid.levelPosition(radii, -1f), kEPSILON);
+		assertEquals(0f, ShadowPyramid.levelPosition(radii, 0f), kEPSILON);
+		assertEquals(0.5f, ShadowPyramid.levelPosition(radii, 0.5f), kEPSILON);
+		for(int x = 1; x < radii.length; x++) {
+			assertEquals(x, ShadowPyramid.levelPosition(radii, radii[x]), kEPSILON);
+		}
+		/* log space between the power of 2 levels */
+		assertEquals(2.5f, ShadowPyramid.levelPosition(radii, (float)Math.sqrt(8.0)), kEPSILON);
+		assertEquals(4f, ShadowPyramid.levelPosition(radii, 100f), kEPSILON);
+	}
+
+	@Test
+	public void levelPositionGrowsWithRadius()
+	{
+		int[] radii = ShadowPyramid.levelRadii(64);
+		float previous = 0f;
+		for(float radius = 0f; radius <= 64f; radius += 0.25f) {
+			float position = ShadowPyramid.levelPosition(radii, radius);
+			assertTrue("radius " + radius, position >= previous);
+			previous = position;
+		}
+	}
+
+	@Test
+	public void levelAlphasAddUpToShadowAlpha()
+	{
+		for(int alpha = 0; alpha <= 255; alpha += 15) {
+			for(float weight = 0f; weight <= 1f; weight += 0.05f) {
+				int alphaUpper = ShadowPyramid.upperLevelAlpha(alpha, weight);
+				assertTrue(alphaUpper >= 0 && alphaUpper <= alpha);
+				/* an opaque umbra in both levels stays at the alpha of the shadow */
+				assertEquals(alpha, compose(255, 255, alpha, alphaUpper));
+			}
+		}
+		assertEquals(0, ShadowPyramid.upperLevelAlpha(200, -0.5f));
+		assertEquals(200, ShadowPyramid.upperLevelAlpha(200, 1.5f));
+	}
+
+	@Test
+	public void addedLevelsBlendLinearly()
+	{
+		int[] values = {0, 64, 128, 200, 255};
+		for(int lower : values) {
+			for(int upper : values) {
+				for(float weight = 0f; weight <= 1f; weight += 0.1f) {
+					int alphaUpper = ShadowPyramid.upperLevelAlpha(255, weight);
+					float expected = (lower * (1f - weight)) + (upper * weight);
+					int actual = compose(lower, upper, 255, alphaUpper);
+					assertTrue(lower + "/" + upper + " at " + weight + " gave " + actual, Math.abs(actual - expected) <= 1.5f);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Alpha of the layer after drawing the lower level with the rest of aAlpha and adding the upper one with aAlphaUpper.
+	 */
+	private static int compose(int aLower, int aUpper, int aAlpha, int aAlphaUpper)
+	{
+		int alphaLower = aAlpha - aAlphaUpper;
+		return Math.min(255, Math.round(((aLower * alphaLower) + (aUpper * aAlphaUpper)) / 255f));
+	}
+}
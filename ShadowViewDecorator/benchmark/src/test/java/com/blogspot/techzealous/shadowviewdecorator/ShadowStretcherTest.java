@@ -0,0 +1,87 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stretches a synthetic shadow, blurred edges of kEDGE pixels around a flat middle, and compares it
+ * with the same shadow made at the new size.
+ */
+public class ShadowStretcherTest {
+
+	private static final int kEDGE = 10;
+
+	@Test
+	public void findsMiddleBand()
+	{
+		int[] pixels = createShadow(40, 30);
+		int[] columns = ShadowStretcher.findUniformColumns(pixels, 40, 30);
+		int[] rows = ShadowStretcher.findUniformRows(pixels, 40, 30);
+		assertEquals(kEDGE, columns[0]);
+		assertEquals(40 - kEDGE, columns[1]);
+		assertEquals(kEDGE, rows[0]);
+		assertEquals(30 - kEDGE, rows[1]);
+	}
+
+	@Test
+	public void findsSingleColumnWithoutBand()
+	{
+		int[] pixels = new int[8 * 2];
+		for(int x = 0; x < pixels.length; x++) {
+			pixels[x] = x;
+		}
+		int[] columns = ShadowStretcher.findUniformColumns(pixels, 8, 2);
+		assertEquals(1, columns[1] - columns[0]);
+		assertFalse(ShadowStretcher.canStretch(columns, 8, 9));
+		assertTrue(ShadowStretcher.canStretch(columns, 8, 8));
+	}
+
+	@Test
+	public void canStretchDownToSingleColumn()
+	{
+		int[] band = {10, 30};
+		assertTrue(ShadowStretcher.canStretch(band, 40, 100));
+		assertTrue(ShadowStretcher.canStretch(band, 40, 21));
+		assertFalse(ShadowStretcher.canStretch(band, 40, 20));
+	}
+
+	@Test
+	public void stretchMatchesShadowOfNewSize()
+	{
+		int[][] sizes = {{40, 30}, {41, 31}, {100, 30}, {21, 21}, {40, 90}, {25, 64}};
+		int[] pixels = createShadow(40, 30);
+		int[] columns = ShadowStretcher.findUniformColumns(pixels, 40, 30);
+		int[] rows = ShadowStretcher.findUniformRows(pixels, 40, 30);
+		for(int[] size : sizes) {
+			assertTrue(ShadowStretcher.canStretch(columns, 40, size[0]));
+			assertTrue(ShadowStretcher.canStretch(rows, 30, size[1]));
+			int[] stretched = ShadowStretcher.stretch(pixels, 40, 30, columns, rows, size[0], size[1]);
+			int[] expected = createShadow(size[0], size[1]);
+			assertEquals(expected.length, stretched.length);
+			for(int x = 0; x < expected.length; x++) {
+				assertEquals(size[0] + "x" + size[1] + " pixel " + x, expected[x], stretched[x]);
+			}
+		}
+	}
+
+	/**
+	 * @return int[] - pixels which depend on the distance to the nearest edges, up to kEDGE, with distinct corner values.
+	 */
+	private static int[] createShadow(int aWidth, int aHeight)
+	{
+		int[] pixels = new int[aWidth * aHeight];
+		for(int y = 0; y < aHeight; y++) {
+			for(int x = 0; x < aWidth; x++) {
+				int left = Math.min(x, kEDGE);
+				int right = Math.min(aWidth - 1 - x, kEDGE);
+				int top = Math.min(y, kEDGE);
+				int bottom = Math.min(aHeight - 1 - y, kEDGE);
+				pixels[(y * aWidth) + x] = 0xFF000000 | (left << 18) | (right << 12) | (top << 6) | bottom;
+			}
+		}
+		return pixels;
+	}
+}
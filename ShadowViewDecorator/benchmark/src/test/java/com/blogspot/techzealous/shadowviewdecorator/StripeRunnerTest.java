@@ -0,0 +1,81 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the stripes cover every row once and that a cancelled job stops between chunks of a pass.
+ */
+public class StripeRunnerTest {
+
+	private static final int kWIDTH = 1080;
+	private static final int kHEIGHT = 1920;
+
+	@Test
+	public void coversEveryRowOnce()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			StripeRunner[] runners = {new StripeRunner(), new StripeRunner(executor, 4, 0)};
+			for(StripeRunner runner : runners) {
+				CancellationToken.setCurrent(new CancellationToken());
+				final AtomicInteger[] counts = createCounts(kHEIGHT);
+				runner.run(kHEIGHT, kWIDTH * kHEIGHT, new StripeRunner.Stripe() {
+					@Override
+					public void run(int aStart, int aEnd) {
+						for(int row = aStart; row < aEnd; row++) {
+							counts[row].incrementAndGet();
+						}
+					}
+				});
+				for(int row = 0; row < kHEIGHT; row++) {
+					assertEquals(1, counts[row].get());
+				}
+			}
+		} finally {
+			CancellationToken.setCurrent(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void cancelledJobStopsWithinPass()
+	{
+		final CancellationToken token = new CancellationToken();
+		CancellationToken.setCurrent(token);
+		final AtomicInteger rows = new AtomicInteger();
+		boolean isCancelled = false;
+		try {
+			new StripeRunner().run(kHEIGHT, kWIDTH * kHEIGHT, new StripeRunner.Stripe() {
+				@Override
+				public void run(int aStart, int aEnd) {
+					rows.addAndGet(aEnd - aStart);
+					/* superseded while the first chunk runs */
+					token.cancel();
+				}
+			});
+		} catch (CancellationException e) {
+			isCancelled = true;
+		} finally {
+			CancellationToken.setCurrent(null);
+		}
+		assertTrue(isCancelled);
+		assertTrue("ran " + rows.get() + " rows", rows.get() > 0 && rows.get() <= 128);
+	}
+
+	private static AtomicInteger[] createCounts(int aCount)
+	{
+		AtomicInteger[] counts = new AtomicInteger[aCount];
+		for(int x = 0; x < aCount; x++) {
+			counts[x] = new AtomicInteger();
+		}
+		return counts;
+	}
+}
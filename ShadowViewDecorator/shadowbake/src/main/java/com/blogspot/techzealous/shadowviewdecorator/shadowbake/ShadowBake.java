@@ -0,0 +1,131 @@
+package com.blogspot.techzealous.shadowviewdecorator.shadowbake;
+
+import com.blogspot.techzealous.shadowviewdecorator.AlphaMask;
+import com.blogspot.techzealous.shadowviewdecorator.BlurBackend;
+import com.blogspot.techzealous.shadowviewdecorator.BoxGaussianBlurBackend;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Bakes the shadows of drawable PNGs at build time with the same box Gaussian kernel ShadowViewDecorator uses at runtime.
+ * The spec file lists drawables with their blur radius in dp, for example button_100x50=6. For each density folder
+ * of the resources which has the drawable, a black PNG with the blurred alpha of the drawable is written as
+ * drawable-density/name_shadow.png, larger than the drawable by the radius on each side.
+ * The color and the offset are applied at runtime by ShadowViewDecorator.dropShadowPrebaked, so one PNG fits all of them.
+ * Usage: ShadowBake spec.properties res-dir out-dir
+ */
+public class ShadowBake {
+
+	private static final String kSUFFIX = "_shadow";
+	private static final Map<String, Float> sDensities = createDensities();
+
+	private ShadowBake() {}
+
+	public static void main(String[] aArgs) throws IOException
+	{
+		if(aArgs.length != 3) {
+			System.err.println("Usage: ShadowBake <spec.properties> <res dir> <out dir>");
+			System.exit(1);
+		}
+
+		Properties spec = new Properties();
+		InputStream input = new FileInputStream(aArgs[0]);
+		try {
+			spec.load(input);
+		} finally {
+			input.close();
+		}
+
+		File dirRes = new File(aArgs[1]);
+		File dirOut = new File(aArgs[2]);
+		File[] dirs = dirRes.listFiles();
+		if(dirs == null) {throw new IOException("Not a directory: " + dirRes);}
+
+		BlurBackend blurBackend = new BoxGaussianBlurBackend();
+		int count = 0;
+		for(File dir : dirs) {
+			float density = densityOf(dir.getName());
+			if(!dir.isDirectory() || density <= 0f) {continue;}
+
+			for(String name : spec.stringPropertyNames()) {
+				File file = new File(dir, name + ".png");
+				if(!file.isFile()) {continue;}
+
+				int radius = Math.round(Float.parseFloat(spec.getProperty(name).trim()) * density);
+				BufferedImage image = ImageIO.read(file);
+				if(image == null) {throw new IOException("Not a PNG: " + file);}
+				File fileOut = new File(new File(dirOut, dir.getName()), name + kSUFFIX + ".png");
+				if(!fileOut.getParentFile().isDirectory() && !fileOut.getParentFile().mkdirs()) {
+					throw new IOException("Cannot create " + fileOut.getParentFile());
+				}
+				ImageIO.write(bake(image, radius, blurBackend), "png", fileOut);
+				count++;
+			}
+		}
+		System.out.println("Baked " + count + " shadows into " + dirOut);
+	}
+
+	/**
+	 * @param aImage - the drawable.
+	 * @param aRadius - blur radius in pixels.
+	 * @param aBlurBackend - backend which blurs the shadow.
+	 * @return BufferedImage - black image with the blurred alpha of the drawable, larger by aRadius on each side.
+	 */
+	public static BufferedImage bake(BufferedImage aImage, int aRadius, BlurBackend aBlurBackend)
+	{
+		int radius = Math.max(aRadius, 0);
+		int width = aImage.getWidth() + (radius * 2);
+		int height = aImage.getHeight() + (radius * 2);
+		AlphaMask mask = new AlphaMask(width, height);
+		for(int y = 0; y < aImage.getHeight(); y++) {
+			for(int x = 0; x < aImage.getWidth(); x++) {
+				mask.pixels[((y + radius) * width) + x + radius] = (byte)(aImage.getRGB(x, y) >>> 24);
+			}
+		}
+		aBlurBackend.blur(mask, radius);
+
+		BufferedImage imageShadow = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = new int[width * height];
+		for(int x = 0; x < pixels.length; x++) {
+			pixels[x] = (mask.pixels[x] & 0xFF) << 24;
+		}
+		imageShadow.setRGB(0, 0, width, height, pixels, 0, width);
+		return imageShadow;
+	}
+
+	/**
+	 * @param aDirName - name of a resource folder, for example drawable-hdpi.
+	 * @return float - density factor of a drawable folder, 1 for drawable, 0 for other folders.
+	 */
+	private static float densityOf(String aDirName)
+	{
+		if(aDirName.equals("drawable")) {return 1f;}
+		if(!aDirName.startsWith("drawable-")) {return 0f;}
+		for(String qualifier : aDirName.substring("drawable-".length()).split("-")) {
+			Float density = sDensities.get(qualifier);
+			if(density != null) {return density;}
+		}
+		return 1f;
+	}
+
+	private static Map<String, Float> createDensities()
+	{
+		Map<String, Float> densities = new HashMap<String, Float>();
+		densities.put("ldpi", 0.75f);
+		densities.put("mdpi", 1f);
+		densities.put("hdpi", 1.5f);
+		densities.put("xhdpi", 2f);
+		densities.put("xxhdpi", 3f);
+		densities.put("xxxhdpi", 4f);
+		return densities;
+	}
+}
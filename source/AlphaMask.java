@@ -0,0 +1,55 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Alpha only image, one byte per pixel in row major order without row padding.
+ * Shadows are a single color multiplied by an alpha mask, so only the mask needs to be rasterized and blurred.
+ */
+public class AlphaMask {
+
+	public final int width;
+	public final int height;
+	public final byte[] pixels;
+
+	public AlphaMask(int aWidth, int aHeight)
+	{
+		this(aWidth, aHeight, new byte[aWidth * aHeight]);
+	}
+
+	public AlphaMask(int aWidth, int aHeight, byte[] aPixels)
+	{
+		super();
+		if(aPixels.length < aWidth * aHeight) {
+			throw new IllegalArgumentException("Mask of " + aWidth + "x" + aHeight + " needs " + (aWidth * aHeight)
+					+ " bytes, got " + aPixels.length);
+		}
+		width = aWidth;
+		height = aHeight;
+		pixels = aPixels;
+	}
+
+	/**
+	 * @param aX - column.
+	 * @param aY - row.
+	 * @return int - alpha value 0-255 at the given position.
+	 */
+	public int getAlpha(int aX, int aY)
+	{
+		return pixels[(aY * width) + aX] & 0xFF;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the size and the alpha values, used to find shadows of masks with the same content.
+	 * @return long - hash of the mask content.
+	 */
+	public long contentHash()
+	{
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ width) * 0x100000001b3L;
+		hash = (hash ^ height) * 0x100000001b3L;
+		int count = width * height;
+		for(int x = 0; x < count; x++) {
+			hash = (hash ^ (pixels[x] & 0xFF)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
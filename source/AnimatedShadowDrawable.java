@@ -0,0 +1,82 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Background with a shadow whose elevation can be animated, for example with ObjectAnimator.ofFloat(drawable, "elevation", ..).
+ * The shadow is drawn from a ShadowPyramid by cross-fading the two levels nearest to the elevation, no blur is done per frame.
+ * The two levels are added in a layer, so their weights sum to the alpha of the shadow: drawing one over the other
+ * would dim the shadow between the levels, by a quarter of an opaque umbra half way.
+ * The blur radius follows the elevation and the shadow moves down by half of it, the shadow is drawn outside of the bounds
+ * so the parent must not clip it. The original background is drawn on top as with ShadowDrawable.
+ */
+public class AnimatedShadowDrawable extends ShadowDrawable {
+
+	private Bitmap[] mLevels;
+	private int[] mRadii;
+	private float mElevation;
+	private Rect mRectShifted;
+	private PorterDuffXfermode mXfermodeAdd;
+
+	/**
+	 * @param aDrawable - the original background, may be null.
+	 * @param aLevels - ALPHA_8 levels of the pyramid, larger than the bounds by aPadding on each side.
+	 * @param aRadii - blur radii of the levels, from ShadowPyramid.levelRadii.
+	 * @param aPadding - border of the levels around the shape.
+	 * @param aShadowColor - color of the shadow.
+	 */
+	public AnimatedShadowDrawable(Drawable aDrawable, Bitmap[] aLevels, int[] aRadii, int aPadding, int aShadowColor)
+	{
+		super(aDrawable, aLevels[0], new Rect(aPadding, aPadding, aPadding, aPadding), aShadowColor);
+		mLevels = aLevels;
+		mRadii = aRadii;
+		mRectShifted = new Rect();
+		mXfermodeAdd = new PorterDuffXfermode(PorterDuff.Mode.ADD);
+	}
+
+	/**
+	 * @param aElevation - elevation in pixels, clamped to the radius of the largest level.
+	 * @return void.
+	 */
+	public void setElevation(float aElevation)
+	{
+		float elevation = Math.max(0f, Math.min(aElevation, mRadii[mRadii.length - 1]));
+		if(elevation == mElevation) {return;}
+		mElevation = elevation;
+		invalidateSelf();
+	}
+
+	/**
+	 * @return float - current elevation in pixels.
+	 */
+	public float getElevation()
+	{
+		return mElevation;
+	}
+
+	@Override
+	protected void drawShadow(Canvas aCanvas, Rect aRectDest, int aAlpha)
+	{
+		mRectShifted.set(aRectDest);
+		mRectShifted.offset(0, Math.round(mElevation / 2f));
+
+		float position = ShadowPyramid.levelPosition(mRadii, mElevation);
+		int index = (int)position;
+		int alphaUpper = (index + 1 < mLevels.length) ? ShadowPyramid.upperLevelAlpha(aAlpha, position - index) : 0;
+		if(alphaUpper == 0) {
+			drawMask(aCanvas, mLevels[index], mRectShifted, aAlpha);
+			return;
+		}
+
+		int count = aCanvas.saveLayer(mRectShifted.left, mRectShifted.top, mRectShifted.right, mRectShifted.bottom, null,
+				Canvas.ALL_SAVE_FLAG);
+		drawMask(aCanvas, mLevels[index], mRectShifted, aAlpha - alphaUpper);
+		drawMask(aCanvas, mLevels[index + 1], mRectShifted, alphaUpper, mXfermodeAdd);
+		aCanvas.restoreToCount(count);
+	}
+}
@@ -0,0 +1,457 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Separable box blur working on raw pixel arrays instead of on Bitmap.getPixel/setPixel.
+ * Each pass keeps a running sum of the window, so the cost per pixel is the same for any radius.
+ * The sums are divided by the window with a fixed point reciprocal and rounded to the nearest value, so there is
+ * no integer division per pixel, which many ARM cores do in software, and the result is the same on every JVM.
+ * The vertical passes run as horizontal passes over a transposed copy, as walking down the columns of a row major image
+ * touches a new cache line with every pixel. The last horizontal pass writes its result transposed a strip of rows
+ * at a time while the strip stays in the cache, so the transposes cost no extra pass over the image.
+ */
+public class BoxBlur {
+
+	/** Fractional bits of the reciprocals, the products of a window sum and its reciprocal stay below 2^32. */
+	private static final int kRECIPROCAL_SHIFT = 23;
+	/** Largest window which the reciprocal divides exactly, larger windows fall back to the division. */
+	private static final int kRECIPROCAL_MAX_DIV = 181;
+	/** Rows of a strip of the transposed alpha pass, the source rows of a strip fit in the L1 cache. */
+	private static final int kSTRIP_ALPHA = 64;
+	/** Rows of a strip of the transposed ARGB pass, the blurred strip fits in the L2 cache. */
+	private static final int kSTRIP_ARGB = 32;
+
+	private BoxBlur() {}
+
+	/**
+	 * Blurs ARGB pixels in place. Pixels outside of the image are mirrored back into it.
+	 * The result is within 1 per channel of a float box blur of each pass, see BoxBlurTest.
+	 * @param aPixels - ARGB pixels in row major order, as returned by Bitmap.getPixels.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurArgb(int[] aPixels, int aWidth, int aHeight, int aRadius)
+	{
+		if(aRadius <= 0 || aWidth <= 0 || aHeight <= 0) {return;}
+
+		int[] temp = new int[aWidth * aHeight];
+		blurArgbRowsTransposed(aPixels, temp, aWidth, aHeight, aRadius);
+		blurArgbRowsTransposed(temp, aPixels, aHeight, aWidth, aRadius);
+	}
+
+	/**
+	 * Horizontal pass of the ARGB blur.
+	 * @param aSrc - source pixels.
+	 * @param aDst - destination pixels, must not be the same array as aSrc.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurArgbRows(int[] aSrc, int[] aDst, int aWidth, int aHeight, int aRadius)
+	{
+		blurArgbRows(aSrc, aDst, aWidth, aHeight, aRadius, 0, aHeight, 0);
+	}
+
+	/**
+	 * Horizontal pass of the ARGB blur for the rows from aRowStart (inclusive) to aRowEnd (exclusive).
+	 * @param aDstShift - subtracted from the index of every written pixel, so the rows can be written into a smaller buffer.
+	 * @return void.
+	 */
+	public static void blurArgbRows(int[] aSrc, int[] aDst, int aWidth, int aHeight, int aRadius, int aRowStart, int aRowEnd,
+			int aDstShift)
+	{
+		int div = (aRadius * 2) + 1;
+		int reciprocal = reciprocal(div);
+		int[] indices = mirrorIndices(aWidth, aRadius);
+
+		for(int row = aRowStart; row < aRowEnd; row++) {
+			int offset = row * aWidth;
+			int dstOffset = offset - aDstShift;
+			int sumAlpha = div / 2;
+			int sumRed = div / 2;
+			int sumGreen = div / 2;
+			int sumBlue = div / 2;
+			for(int k = 0; k < div; k++) {
+				int pixel = aSrc[offset + indices[k]];
+				sumAlpha += pixel >>> 24;
+				sumRed += (pixel >> 16) & 0xFF;
+				sumGreen += (pixel >> 8) & 0xFF;
+				sumBlue += pixel & 0xFF;
+			}
+
+			for(int col = 0; col < aWidth; col++) {
+				aDst[dstOffset + col] = (divide(sumAlpha, div, reciprocal) << 24) | (divide(sumRed, div, reciprocal) << 16)
+						| (divide(sumGreen, div, reciprocal) << 8) | divide(sumBlue, div, reciprocal);
+				if(col + 1 == aWidth) {break;}
+
+				int pixelOut = aSrc[offset + indices[col]];
+				int pixelIn = aSrc[offset + indices[col + div]];
+				sumAlpha += (pixelIn >>> 24) - (pixelOut >>> 24);
+				sumRed += ((pixelIn >> 16) & 0xFF) - ((pixelOut >> 16) & 0xFF);
+				sumGreen += ((pixelIn >> 8) & 0xFF) - ((pixelOut >> 8) & 0xFF);
+				sumBlue += (pixelIn & 0xFF) - (pixelOut & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Vertical pass of the ARGB blur.
+	 * @param aSrc - source pixels.
+	 * @param aDst - destination pixels, must not be the same array as aSrc.
+	 * @param aWidth - width of the image.
+	 * @param aHeight - height of the image.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurArgbColumns(int[] aSrc, int[] aDst, int aWidth, int aHeight, int aRadius)
+	{
+		int div = (aRadius * 2) + 1;
+		int reciprocal = reciprocal(div);
+		int[] indices = mirrorIndices(aHeight, aRadius);
+
+		for(int col = 0; col < aWidth; col++) {
+			int sumAlpha = div / 2;
+			int sumRed = div / 2;
+			int sumGreen = div / 2;
+			int sumBlue = div / 2;
+			for(int k = 0; k < div; k++) {
+				int pixel = aSrc[(indices[k] * aWidth) + col];
+				sumAlpha += pixel >>> 24;
+				sumRed += (pixel >> 16) & 0xFF;
+				sumGreen += (pixel >> 8) & 0xFF;
+				sumBlue += pixel & 0xFF;
+			}
+
+			for(int row = 0; row < aHeight; row++) {
+				aDst[(row * aWidth) + col] = (divide(sumAlpha, div, reciprocal) << 24) | (divide(sumRed, div, reciprocal) << 16)
+						| (divide(sumGreen, div, reciprocal) << 8) | divide(sumBlue, div, reciprocal);
+				if(row + 1 == aHeight) {break;}
+
+				int pixelOut = aSrc[(indices[row] * aWidth) + col];
+				int pixelIn = aSrc[(indices[row + div] * aWidth) + col];
+				sumAlpha += (pixelIn >>> 24) - (pixelOut >>> 24);
+				sumRed += ((pixelIn >> 16) & 0xFF) - ((pixelOut >> 16) & 0xFF);
+				sumGreen += ((pixelIn >> 8) & 0xFF) - ((pixelOut >> 8) & 0xFF);
+				sumBlue += (pixelIn & 0xFF) - (pixelOut & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Blurs an alpha mask in place. Pixels outside of the mask are treated as transparent,
+	 * so the mask fades out towards its borders.
+	 * @param aMask - mask to blur.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurAlpha(AlphaMask aMask, int aRadius)
+	{
+		if(aRadius <= 0 || aMask.width <= 0 || aMask.height <= 0) {return;}
+		blurAlpha(aMask, new int[] {aRadius}, new StripeRunner());
+	}
+
+	/**
+	 * Blurs an alpha mask in place, running the passes in stripes of rows.
+	 * @param aMask - mask to blur.
+	 * @param aRadius - blur radius in pixels.
+	 * @param aStripeRunner - runner for the stripes.
+	 * @return void.
+	 */
+	public static void blurAlpha(AlphaMask aMask, int aRadius, StripeRunner aStripeRunner)
+	{
+		if(aRadius <= 0 || aMask.width <= 0 || aMask.height <= 0) {return;}
+		blurAlpha(aMask, new int[] {aRadius}, aStripeRunner);
+	}
+
+	/**
+	 * Blurs an alpha mask in place with a box blur of each radius in each direction. All horizontal passes run first,
+	 * the last of them writes the mask transposed, the vertical passes run over its rows and the last one transposes it back,
+	 * so every pass reads and writes memory in order.
+	 * @param aMask - mask to blur.
+	 * @param aRadii - blur radius in pixels of each pass, radii of 0 are skipped.
+	 * @param aStripeRunner - runner for the stripes of rows.
+	 * @return void.
+	 */
+	public static void blurAlpha(AlphaMask aMask, int[] aRadii, StripeRunner aStripeRunner)
+	{
+		if(aMask.width <= 0 || aMask.height <= 0) {return;}
+
+		int last = aRadii.length - 1;
+		while(last >= 0 && aRadii[last] <= 0) {last--;}
+		if(last < 0) {return;}
+
+		/* every pass writes into the other buffer, they are even in count so the result ends in the mask */
+		byte[] src = aMask.pixels;
+		byte[] dst = new byte[aMask.width * aMask.height];
+		for(int direction = 0; direction < 2; direction++) {
+			int width = (direction == 0) ? aMask.width : aMask.height;
+			int height = (direction == 0) ? aMask.height : aMask.width;
+			for(int x = 0; x <= last; x++) {
+				if(aRadii[x] <= 0) {continue;}
+				if(x == last) {
+					blurAlphaRowsTransposed(src, dst, width, height, aRadii[x], aStripeRunner);
+				} else {
+					blurAlphaRows(src, dst, width, height, aRadii[x], aStripeRunner);
+				}
+				byte[] swap = src;
+				src = dst;
+				dst = swap;
+			}
+		}
+	}
+
+	/**
+	 * Horizontal pass of the alpha blur, split in stripes of rows.
+	 * @return void.
+	 */
+	public static void blurAlphaRows(final byte[] aSrc, final byte[] aDst, final int aWidth, final int aHeight, final int aRadius,
+			StripeRunner aStripeRunner)
+	{
+		aStripeRunner.run(aHeight, aWidth * aHeight, new StripeRunner.Stripe() {
+			@Override
+			public void run(int aStart, int aEnd) {
+				blurAlphaRows(aSrc, aDst, aWidth, aHeight, aRadius, aStart, aEnd);
+			}
+		});
+	}
+
+	/**
+	 * Vertical pass of the alpha blur, split in stripes of columns.
+	 * @return void.
+	 */
+	public static void blurAlphaColumns(final byte[] aSrc, final byte[] aDst, final int aWidth, final int aHeight, final int aRadius,
+			StripeRunner aStripeRunner)
+	{
+		aStripeRunner.run(aWidth, aWidth * aHeight, new StripeRunner.Stripe() {
+			@Override
+			public void run(int aStart, int aEnd) {
+				blurAlphaColumns(aSrc, aDst, aWidth, aHeight, aRadius, aStart, aEnd);
+			}
+		});
+	}
+
+	/**
+	 * Horizontal pass of the alpha blur.
+	 * @param aSrc - source alpha values.
+	 * @param aDst - destination alpha values, must not be the same array as aSrc.
+	 * @param aWidth - width of the mask.
+	 * @param aHeight - height of the mask.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurAlphaRows(byte[] aSrc, byte[] aDst, int aWidth, int aHeight, int aRadius)
+	{
+		blurAlphaRows(aSrc, aDst, aWidth, aHeight, aRadius, 0, aHeight);
+	}
+
+	/**
+	 * Horizontal pass of the alpha blur for the rows from aRowStart (inclusive) to aRowEnd (exclusive).
+	 * @return void.
+	 */
+	public static void blurAlphaRows(byte[] aSrc, byte[] aDst, int aWidth, int aHeight, int aRadius, int aRowStart, int aRowEnd)
+	{
+		int div = (aRadius * 2) + 1;
+		int reciprocal = reciprocal(div);
+		int first = Math.min(aRadius, aWidth - 1);
+
+		for(int row = aRowStart; row < aRowEnd; row++) {
+			int offset = row * aWidth;
+			int sum = div / 2;
+			for(int k = 0; k <= first; k++) {
+				sum += aSrc[offset + k] & 0xFF;
+			}
+
+			for(int col = 0; col < aWidth; col++) {
+				aDst[offset + col] = (byte)divide(sum, div, reciprocal);
+
+				int out = col - aRadius;
+				int in = col + aRadius + 1;
+				if(out >= 0) {sum -= aSrc[offset + out] & 0xFF;}
+				if(in < aWidth) {sum += aSrc[offset + in] & 0xFF;}
+			}
+		}
+	}
+
+	/**
+	 * Vertical pass of the alpha blur.
+	 * @param aSrc - source alpha values.
+	 * @param aDst - destination alpha values, must not be the same array as aSrc.
+	 * @param aWidth - width of the mask.
+	 * @param aHeight - height of the mask.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurAlphaColumns(byte[] aSrc, byte[] aDst, int aWidth, int aHeight, int aRadius)
+	{
+		blurAlphaColumns(aSrc, aDst, aWidth, aHeight, aRadius, 0, aWidth);
+	}
+
+	/**
+	 * Vertical pass of the alpha blur for the columns from aColStart (inclusive) to aColEnd (exclusive).
+	 * @return void.
+	 */
+	public static void blurAlphaColumns(byte[] aSrc, byte[] aDst, int aWidth, int aHeight, int aRadius, int aColStart, int aColEnd)
+	{
+		int div = (aRadius * 2) + 1;
+		int reciprocal = reciprocal(div);
+		int first = Math.min(aRadius, aHeight - 1);
+
+		for(int col = aColStart; col < aColEnd; col++) {
+			int sum = div / 2;
+			for(int k = 0; k <= first; k++) {
+				sum += aSrc[(k * aWidth) + col] & 0xFF;
+			}
+
+			for(int row = 0; row < aHeight; row++) {
+				aDst[(row * aWidth) + col] = (byte)divide(sum, div, reciprocal);
+
+				int out = row - aRadius;
+				int in = row + aRadius + 1;
+				if(out >= 0) {sum -= aSrc[(out * aWidth) + col] & 0xFF;}
+				if(in < aHeight) {sum += aSrc[(in * aWidth) + col] & 0xFF;}
+			}
+		}
+	}
+
+	/**
+	 * Horizontal pass of the alpha blur which writes its result transposed, the rows of the source become
+	 * the columns of the destination, split in stripes of rows.
+	 * @param aSrc - source alpha values.
+	 * @param aDst - destination alpha values, aHeight wide and aWidth high, must not be the same array as aSrc.
+	 * @param aWidth - width of the source.
+	 * @param aHeight - height of the source.
+	 * @param aRadius - blur radius in pixels.
+	 * @param aStripeRunner - runner for the stripes.
+	 * @return void.
+	 */
+	public static void blurAlphaRowsTransposed(final byte[] aSrc, final byte[] aDst, final int aWidth, final int aHeight,
+			final int aRadius, StripeRunner aStripeRunner)
+	{
+		/* stripes start at whole strips */
+		int stripsCount = (aHeight + kSTRIP_ALPHA - 1) / kSTRIP_ALPHA;
+		aStripeRunner.run(stripsCount, aWidth * aHeight, new StripeRunner.Stripe() {
+			@Override
+			public void run(int aStart, int aEnd) {
+				blurAlphaRowsTransposed(aSrc, aDst, aWidth, aHeight, aRadius, aStart * kSTRIP_ALPHA,
+						Math.min(aEnd * kSTRIP_ALPHA, aHeight));
+			}
+		});
+	}
+
+	/**
+	 * Transposed horizontal pass of the alpha blur for the rows from aRowStart (inclusive) to aRowEnd (exclusive).
+	 * The rows of a strip are blurred side by side with one running sum each, so every column of the strip
+	 * is written as one run of a destination row while the source rows of the strip stay in the cache.
+	 * @return void.
+	 */
+	public static void blurAlphaRowsTransposed(byte[] aSrc, byte[] aDst, int aWidth, int aHeight, int aRadius,
+			int aRowStart, int aRowEnd)
+	{
+		int div = (aRadius * 2) + 1;
+		int reciprocal = reciprocal(div);
+		int first = Math.min(aRadius, aWidth - 1);
+		int[] sums = new int[kSTRIP_ALPHA];
+
+		for(int stripStart = aRowStart; stripStart < aRowEnd; stripStart += kSTRIP_ALPHA) {
+			int stripRows = Math.min(kSTRIP_ALPHA, aRowEnd - stripStart);
+			for(int row = 0; row < stripRows; row++) {
+				int offset = (stripStart + row) * aWidth;
+				int sum = div / 2;
+				for(int k = 0; k <= first; k++) {
+					sum += aSrc[offset + k] & 0xFF;
+				}
+				sums[row] = sum;
+			}
+
+			for(int col = 0; col < aWidth; col++) {
+				int dstOffset = (col * aHeight) + stripStart;
+				int out = col - aRadius;
+				int in = col + aRadius + 1;
+				int srcOffset = stripStart * aWidth;
+				for(int row = 0; row < stripRows; row++) {
+					int sum = sums[row];
+					aDst[dstOffset + row] = (byte)divide(sum, div, reciprocal);
+					if(out >= 0) {sum -= aSrc[srcOffset + out] & 0xFF;}
+					if(in < aWidth) {sum += aSrc[srcOffset + in] & 0xFF;}
+					sums[row] = sum;
+					srcOffset += aWidth;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Horizontal pass of the ARGB blur which writes its result transposed, the rows of the source become
+	 * the columns of the destination.
+	 * @param aSrc - source pixels.
+	 * @param aDst - destination pixels, aHeight wide and aWidth high, must not be the same array as aSrc.
+	 * @param aWidth - width of the source.
+	 * @param aHeight - height of the source.
+	 * @param aRadius - blur radius in pixels.
+	 * @return void.
+	 */
+	public static void blurArgbRowsTransposed(int[] aSrc, int[] aDst, int aWidth, int aHeight, int aRadius)
+	{
+		int[] strip = new int[kSTRIP_ARGB * aWidth];
+		for(int stripStart = 0; stripStart < aHeight; stripStart += kSTRIP_ARGB) {
+			int stripRows = Math.min(kSTRIP_ARGB, aHeight - stripStart);
+			blurArgbRows(aSrc, strip, aWidth, aHeight, aRadius, stripStart, stripStart + stripRows, stripStart * aWidth);
+
+			/* the strip is blurred into a buffer, each of its columns is one run of a destination row */
+			for(int col = 0; col < aWidth; col++) {
+				int dstOffset = (col * aHeight) + stripStart;
+				for(int row = 0; row < stripRows; row++) {
+					aDst[dstOffset + row] = strip[(row * aWidth) + col];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param aDiv - count of pixels in the window.
+	 * @return int - 2^kRECIPROCAL_SHIFT / aDiv rounded up, or 0 if the window is too large to divide with it.
+	 */
+	static int reciprocal(int aDiv)
+	{
+		if(aDiv > kRECIPROCAL_MAX_DIV) {return 0;}
+		return ((1 << kRECIPROCAL_SHIFT) + aDiv - 1) / aDiv;
+	}
+
+	/**
+	 * Divides a window sum of up to 255 per pixel. The sums start at aDiv / 2, so the quotient is rounded.
+	 * The error of the rounded up reciprocal times the sum stays below 2^kRECIPROCAL_SHIFT up to kRECIPROCAL_MAX_DIV,
+	 * so the shifted product is exactly the quotient of the division.
+	 * @param aSum - window sum plus aDiv / 2.
+	 * @param aDiv - count of pixels in the window.
+	 * @param aReciprocal - reciprocal of aDiv.
+	 * @return int - aSum / aDiv.
+	 */
+	static int divide(int aSum, int aDiv, int aReciprocal)
+	{
+		if(aReciprocal == 0) {return aSum / aDiv;}
+		return (aSum * aReciprocal) >>> kRECIPROCAL_SHIFT;
+	}
+
+	/**
+	 * Maps the positions -aRadius .. aCount + aRadius - 1 to positions inside 0 .. aCount - 1.
+	 * Uses the same mirroring as the original boxBlur: -k maps to k and aCount + k maps to aCount - 1 - k.
+	 * @param aCount - count of pixels in the row or column.
+	 * @param aRadius - blur radius in pixels.
+	 * @return int[] - the index for position (i - aRadius) is stored at i.
+	 */
+	static int[] mirrorIndices(int aCount, int aRadius)
+	{
+		int[] indices = new int[aCount + (aRadius * 2)];
+		for(int i = 0; i < indices.length; i++) {
+			int x = i - aRadius;
+			while(x < 0 || x >= aCount) {
+				if(x < 0) {x = Math.abs(x);}
+				if(x >= aCount) {x = (aCount - 1) - (x - aCount);}
+			}
+			indices[i] = x;
+		}
+		return indices;
+	}
+}
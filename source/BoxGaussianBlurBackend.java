@@ -0,0 +1,89 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Approximates a Gaussian blur with three box blur passes in each direction.
+ * The three horizontal passes run first and the three vertical ones after them, so the mask is transposed only twice.
+ * Runs in plain Java, has no limit on the radius and its cost does not depend on the radius.
+ */
+public class BoxGaussianBlurBackend implements BlurBackend {
+
+	private static final int kPASSES_COUNT = 3;
+
+	private StripeRunner mStripeRunner;
+
+	/**
+	 * Creates a backend which blurs on the calling thread.
+	 */
+	public BoxGaussianBlurBackend()
+	{
+		this(new StripeRunner());
+	}
+
+	/**
+	 * Creates a backend which splits every pass in stripes with the passed in runner.
+	 * @param aStripeRunner - runner for the stripes.
+	 */
+	public BoxGaussianBlurBackend(StripeRunner aStripeRunner)
+	{
+		super();
+		mStripeRunner = aStripeRunner;
+	}
+
+	@Override
+	public void blur(AlphaMask aMask, int aRadius)
+	{
+		if(aRadius <= 0 || aMask.width <= 0 || aMask.height <= 0) {return;}
+
+		int[] sizes = boxSizesForSigma(sigmaForRadius(aRadius), kPASSES_COUNT);
+		int[] radii = new int[sizes.length];
+		for(int x = 0; x < sizes.length; x++) {
+			radii[x] = sizes[x] / 2;
+		}
+		BoxBlur.blurAlpha(aMask, radii, mStripeRunner);
+	}
+
+	/**
+	 * Converts a blur radius to sigma the same way ScriptIntrinsicBlur does, so both backends give similar shadows.
+	 * @param aRadius - blur radius in pixels.
+	 * @return float - sigma of the Gaussian.
+	 */
+	public static float sigmaForRadius(int aRadius)
+	{
+		return (0.4f * aRadius) + 0.6f;
+	}
+
+	/**
+	 * Calculates the sizes of the box filters whose repeated application gives a Gaussian with the passed in sigma.
+	 * @param aSigma - sigma of the Gaussian.
+	 * @param aPassesCount - count of box blur passes.
+	 * @return int[] - odd box sizes (2 * radius + 1), one for each pass.
+	 */
+	public static int[] boxSizesForSigma(float aSigma, int aPassesCount)
+	{
+		double variance = 12.0 * aSigma * aSigma;
+		int sizeLower = (int)Math.floor(Math.sqrt((variance / aPassesCount) + 1));
+		if(sizeLower % 2 == 0) {sizeLower--;}
+		int sizeUpper = sizeLower + 2;
+
+		double countLowerIdeal = (variance - (aPassesCount * sizeLower * sizeLower) - (4 * aPassesCount * sizeLower) - (3 * aPassesCount))
+				/ ((-4 * sizeLower) - 4);
+		int countLower = (int)Math.round(countLowerIdeal);
+
+		int[] sizes = new int[aPassesCount];
+		for(int x = 0; x < aPassesCount; x++) {
+			sizes[x] = (x < countLower) ? sizeLower : sizeUpper;
+		}
+		return sizes;
+	}
+
+	@Override
+	public int scaleRadius(int aRadius, int aFactor)
+	{
+		return MaskScaler.scaleGaussianRadius(aRadius, aFactor);
+	}
+
+	@Override
+	public void release()
+	{
+	}
+}
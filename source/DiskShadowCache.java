@@ -0,0 +1,252 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk tier below the ShadowCache for the blurred ALPHA_8 masks, so shadows survive process restarts.
+ * Only masks with persistent keys, made from the content of the mask, are stored. Each mask is one file with a header
+ * (magic, format version, kernel version, key hash, width, height, row bytes) and the raw rows of the bitmap,
+ * read back through a MappedByteBuffer straight into the bitmap. Files written by other kernel versions are dropped
+ * when read, the oldest files are deleted when the cache gets over its maximum size.
+ * All methods do disk IO, call them on a worker thread.
+ */
+public class DiskShadowCache {
+
+	/** Version of the blur kernels, increase it when they change so masks blurred by older kernels are not used. */
+	public static final int KERNEL_VERSION = 3;
+
+	private static final String LOG = "DiskShadowCache";
+	private static final int kMAGIC = 0x53485744;
+	private static final int kFORMAT_VERSION = 1;
+	private static final int kHEADER_BYTES = 32;
+	private static final String kSUFFIX = ".mask";
+
+	private File mDir;
+	private long mMaxBytes;
+	private long mSizeBytes = -1;
+	private int mHitCount;
+	private int mMissCount;
+
+	/**
+	 * @param aDir - directory of the cache, for example new File(context.getCacheDir(), "shadows"). Created if missing.
+	 * @param aMaxBytes - maximum bytes of all cached files.
+	 */
+	public DiskShadowCache(File aDir, long aMaxBytes)
+	{
+		super();
+		mDir = aDir;
+		mMaxBytes = aMaxBytes;
+	}
+
+	/**
+	 * @param aKey - key of the mask.
+	 * @return Bitmap - a new ALPHA_8 bitmap with the cached mask, or null if it is not cached, not persistent or stale.
+	 */
+	public synchronized Bitmap get(ShadowKey aKey)
+	{
+		if(!aKey.isPersistent()) {return null;}
+		File file = fileFor(aKey);
+		if(!file.isFile()) {
+			mMissCount++;
+			return null;
+		}
+
+		Bitmap bitmap = null;
+		try {
+			bitmap = read(file, aKey.persistentHash());
+		} catch (IOException e) {
+			Log.w(LOG, "Cannot read " + file, e);
+		}
+		if(bitmap == null) {
+			if(mSizeBytes >= 0) {mSizeBytes -= file.length();}
+			delete(file);
+			mMissCount++;
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		mHitCount++;
+		return bitmap;
+	}
+
+	/**
+	 * Stores an ALPHA_8 mask, other bitmaps and keys which are not persistent are ignored.
+	 * @param aKey - key of the mask.
+	 * @param aBitmap - the mask.
+	 * @return void.
+	 */
+	public synchronized void put(ShadowKey aKey, Bitmap aBitmap)
+	{
+		if(!aKey.isPersistent() || aBitmap.getConfig() != Config.ALPHA_8) {return;}
+		ensureSize();
+
+		File file = fileFor(aKey);
+		File fileTemp = new File(mDir, file.getName() + ".tmp");
+		try {
+			long bytesOld = file.isFile() ? file.length() : 0;
+			write(fileTemp, aKey.persistentHash(), aBitmap);
+			if(!fileTemp.renameTo(file)) {throw new IOException("Cannot rename " + fileTemp);}
+			mSizeBytes += file.length() - bytesOld;
+		} catch (IOException e) {
+			Log.w(LOG, "Cannot write " + file, e);
+			delete(fileTemp);
+			return;
+		}
+		trimToSize();
+	}
+
+	/**
+	 * Deletes all cached files.
+	 * @return void.
+	 */
+	public synchronized void clear()
+	{
+		File[] files = mDir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				delete(file);
+			}
+		}
+		mSizeBytes = 0;
+	}
+
+	/**
+	 * @return int - count of get calls which found a mask.
+	 */
+	public synchronized int getHitCount()
+	{
+		return mHitCount;
+	}
+
+	/**
+	 * @return int - count of get calls which did not find a mask.
+	 */
+	public synchronized int getMissCount()
+	{
+		return mMissCount;
+	}
+
+	/**
+	 * @return long - bytes of all cached files.
+	 */
+	public synchronized long getSizeBytes()
+	{
+		ensureSize();
+		return mSizeBytes;
+	}
+
+	private File fileFor(ShadowKey aKey)
+	{
+		return new File(mDir, Long.toHexString(aKey.persistentHash()) + kSUFFIX);
+	}
+
+	private static Bitmap read(File aFile, long aKeyHash) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(aFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if(channel.size() < kHEADER_BYTES) {return null;}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.getInt() != kMAGIC || buffer.getInt() != kFORMAT_VERSION || buffer.getInt() != KERNEL_VERSION
+					|| buffer.getLong() != aKeyHash) {
+				return null;
+			}
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int rowBytes = buffer.getInt();
+			if(width <= 0 || height <= 0 || rowBytes < width || channel.size() < kHEADER_BYTES + ((long)rowBytes * height)) {return null;}
+
+			buffer.position(kHEADER_BYTES);
+			Bitmap bitmap = Bitmap.createBitmap(width, height, Config.ALPHA_8);
+			if(bitmap.getRowBytes() == rowBytes) {
+				bitmap.copyPixelsFromBuffer(buffer);
+			} else {
+				/* the row padding of this device differs from the one which wrote the file */
+				int rowBytesBitmap = bitmap.getRowBytes();
+				byte[] bytes = new byte[rowBytesBitmap * height];
+				for(int row = 0; row < height; row++) {
+					buffer.position(kHEADER_BYTES + (row * rowBytes));
+					buffer.get(bytes, row * rowBytesBitmap, Math.min(rowBytes, rowBytesBitmap));
+				}
+				bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(bytes));
+			}
+			return bitmap;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void write(File aFile, long aKeyHash, Bitmap aBitmap) throws IOException
+	{
+		int rowBytes = aBitmap.getRowBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(kHEADER_BYTES + (rowBytes * aBitmap.getHeight()));
+		buffer.putInt(kMAGIC).putInt(kFORMAT_VERSION).putInt(KERNEL_VERSION).putLong(aKeyHash);
+		buffer.putInt(aBitmap.getWidth()).putInt(aBitmap.getHeight()).putInt(rowBytes);
+		buffer.position(kHEADER_BYTES);
+		aBitmap.copyPixelsToBuffer(buffer);
+		buffer.flip();
+
+		FileOutputStream output = new FileOutputStream(aFile);
+		try {
+			FileChannel channel = output.getChannel();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Creates the directory and sums the sizes of the files on the first use.
+	 */
+	private void ensureSize()
+	{
+		if(mSizeBytes >= 0) {return;}
+		if(!mDir.isDirectory() && !mDir.mkdirs()) {Log.w(LOG, "Cannot create " + mDir);}
+		mSizeBytes = 0;
+		File[] files = mDir.listFiles();
+		if(files == null) {return;}
+		for(File file : files) {
+			mSizeBytes += file.length();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files, reading a file touches it, until the cache fits its maximum size.
+	 */
+	private void trimToSize()
+	{
+		if(mSizeBytes <= mMaxBytes) {return;}
+		File[] files = mDir.listFiles();
+		if(files == null) {return;}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File aFile1, File aFile2) {
+				long modified1 = aFile1.lastModified();
+				long modified2 = aFile2.lastModified();
+				return (modified1 < modified2) ? -1 : ((modified1 == modified2) ? 0 : 1);
+			}
+		});
+		for(int x = 0; x < files.length && mSizeBytes > mMaxBytes; x++) {
+			mSizeBytes -= files[x].length();
+			delete(files[x]);
+		}
+	}
+
+	private static void delete(File aFile)
+	{
+		if(aFile.exists() && !aFile.delete()) {Log.w(LOG, "Cannot delete " + aFile);}
+	}
+}
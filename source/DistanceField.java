@@ -0,0 +1,239 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import java.util.Arrays;
+
+/**
+ * Signed distance field of the shape of an alpha mask, the distance in pixels from each pixel center to the edge of the shape,
+ * negative inside and positive outside. It is computed once per mask with the exact linear time Euclidean distance transform
+ * of Felzenszwalb and Huttenlocher, after that a shadow with any radius, spread and falloff is a single table lookup per pixel.
+ * Pixels which are partially covered take their distance from their alpha value, so antialiased edges stay smooth.
+ */
+public class DistanceField {
+
+	/** Falloff of a Gaussian blurred edge, the same as blurring the shape with the radius. */
+	public static final int FALLOFF_GAUSSIAN = 1;
+	/** Alpha falls linearly from the radius inside the edge to the radius outside of it. */
+	public static final int FALLOFF_LINEAR = 2;
+	/** Same as linear with smoothstep easing at both ends. */
+	public static final int FALLOFF_SMOOTH = 3;
+
+	private static final float kINFINITY = 1e20f;
+	/** Entries of the falloff table per pixel of distance. */
+	private static final int kTABLE_STEPS = 16;
+
+	public final int width;
+	public final int height;
+	public final float[] distances;
+
+	/**
+	 * @param aWidth - width of the field.
+	 * @param aHeight - height of the field.
+	 * @param aDistances - signed distances in row major order.
+	 */
+	public DistanceField(int aWidth, int aHeight, float[] aDistances)
+	{
+		super();
+		if(aDistances.length < aWidth * aHeight) {
+			throw new IllegalArgumentException("Field of " + aWidth + "x" + aHeight + " needs " + (aWidth * aHeight)
+					+ " distances, got " + aDistances.length);
+		}
+		width = aWidth;
+		height = aHeight;
+		distances = aDistances;
+	}
+
+	/**
+	 * Computes the signed distance field of a mask, pixels with alpha of at least 128 are inside the shape.
+	 * Stops with a CancellationException between the passes if the current job is cancelled.
+	 * @param aMask - mask of the shape.
+	 * @return DistanceField - the field with the size of the mask.
+	 */
+	public static DistanceField compute(AlphaMask aMask)
+	{
+		/* the grids have a ring of outside pixels, so shapes touching the border of the mask end there */
+		int gridWidth = aMask.width + 2;
+		int gridHeight = aMask.height + 2;
+		float[] outside = new float[gridWidth * gridHeight];
+		float[] inside = new float[gridWidth * gridHeight];
+		Arrays.fill(outside, kINFINITY);
+		for(int y = 0; y < aMask.height; y++) {
+			int offset = y * aMask.width;
+			int gridOffset = ((y + 1) * gridWidth) + 1;
+			for(int x = 0; x < aMask.width; x++) {
+				if((aMask.pixels[offset + x] & 0xFF) >= 128) {
+					outside[gridOffset + x] = 0f;
+					inside[gridOffset + x] = kINFINITY;
+				}
+			}
+		}
+
+		transform(outside, gridWidth, gridHeight);
+		CancellationToken.throwIfCurrentCancelled();
+		transform(inside, gridWidth, gridHeight);
+		CancellationToken.throwIfCurrentCancelled();
+
+		float[] distances = new float[aMask.width * aMask.height];
+		for(int y = 0; y < aMask.height; y++) {
+			int offset = y * aMask.width;
+			int gridOffset = ((y + 1) * gridWidth) + 1;
+			for(int x = 0; x < aMask.width; x++) {
+				int alpha = aMask.pixels[offset + x] & 0xFF;
+				if(alpha > 0 && alpha < 255) {
+					distances[offset + x] = 0.5f - (alpha / 255f);
+				} else if(alpha == 0) {
+					distances[offset + x] = (float)Math.sqrt(outside[gridOffset + x]) - 0.5f;
+				} else {
+					distances[offset + x] = 0.5f - (float)Math.sqrt(inside[gridOffset + x]);
+				}
+			}
+		}
+		return new DistanceField(aMask.width, aMask.height, distances);
+	}
+
+	/**
+	 * @param aX - column.
+	 * @param aY - row.
+	 * @return float - signed distance at the given position.
+	 */
+	public float getDistance(int aX, int aY)
+	{
+		return distances[(aY * width) + aX];
+	}
+
+	/**
+	 * @return int - bytes of the distances, for sizing caches.
+	 */
+	public int byteCount()
+	{
+		return width * height * 4;
+	}
+
+	/**
+	 * Renders the shadow of the shape into a mask which can be larger than the field.
+	 * Outside of the field the distance is extended from its nearest border pixel, which is exact for shapes touching the border
+	 * with straight edges, so the mask can be as large as the shadow needs.
+	 * @param aMask - mask to render into, every pixel is written.
+	 * @param aOriginX - column of the mask where the left edge of the field is, the horizontal offset of the shadow.
+	 * @param aOriginY - row of the mask where the top edge of the field is, the vertical offset of the shadow.
+	 * @param aSpread - distance by which the shape grows before the falloff, negative values shrink it.
+	 * @param aRadius - radius of the falloff in pixels, 0 for a hard edge.
+	 * @param aFalloff - one of FALLOFF_GAUSSIAN, FALLOFF_LINEAR or FALLOFF_SMOOTH.
+	 * @return void.
+	 */
+	public void render(AlphaMask aMask, int aOriginX, int aOriginY, int aSpread, int aRadius, int aFalloff)
+	{
+		int extent = Math.max(aRadius, 0) + 1;
+		float distanceMin = aSpread - extent;
+		byte[] table = createFalloffTable(distanceMin, extent * 2 * kTABLE_STEPS, aSpread, aRadius, aFalloff);
+		int last = table.length - 1;
+
+		for(int y = 0; y < aMask.height; y++) {
+			int fieldY = y - aOriginY;
+			int clampedY = Math.max(0, Math.min(height - 1, fieldY));
+			float outsideY = fieldY - clampedY;
+			int rowOffset = y * aMask.width;
+			int fieldOffset = clampedY * width;
+			for(int x = 0; x < aMask.width; x++) {
+				int fieldX = x - aOriginX;
+				float distance = 0f;
+				if(fieldX >= 0 && fieldX < width && outsideY == 0f) {
+					distance = distances[fieldOffset + fieldX];
+				} else {
+					int clampedX = Math.max(0, Math.min(width - 1, fieldX));
+					float outsideX = fieldX - clampedX;
+					distance = distances[fieldOffset + clampedX]
+							+ (float)Math.sqrt((outsideX * outsideX) + (outsideY * outsideY));
+				}
+				int index = (int)(((distance - distanceMin) * kTABLE_STEPS) + 0.5f);
+				aMask.pixels[rowOffset + x] = table[(index < 0) ? 0 : ((index > last) ? last : index)];
+			}
+		}
+	}
+
+	/**
+	 * @return byte[] - alpha of the shadow for the distances aDistanceMin .. aDistanceMin + aCount / kTABLE_STEPS.
+	 */
+	private static byte[] createFalloffTable(float aDistanceMin, int aCount, int aSpread, int aRadius, int aFalloff)
+	{
+		byte[] table = new byte[aCount + 1];
+		float sigma = BoxGaussianBlurBackend.sigmaForRadius(aRadius);
+		for(int x = 0; x <= aCount; x++) {
+			float edge = aDistanceMin + ((float)x / kTABLE_STEPS) - aSpread;
+			float alpha = 0f;
+			if(aRadius <= 0) {
+				alpha = 0.5f - edge;
+			} else if(aFalloff == FALLOFF_GAUSSIAN) {
+				alpha = 1f - AnalyticShadow.cdf(edge / sigma);
+			} else {
+				alpha = 0.5f - (edge / (aRadius * 2f));
+				if(aFalloff == FALLOFF_SMOOTH) {
+					alpha = Math.max(0f, Math.min(1f, alpha));
+					alpha = alpha * alpha * (3f - (2f * alpha));
+				}
+			}
+			table[x] = (byte)((Math.max(0f, Math.min(1f, alpha)) * 255f) + 0.5f);
+		}
+		return table;
+	}
+
+	/**
+	 * Squared Euclidean distance transform in place, columns and then rows.
+	 * @param aGrid - 0 for the pixels to which the distance is measured, kINFINITY for the others.
+	 */
+	private static void transform(float[] aGrid, int aWidth, int aHeight)
+	{
+		int length = Math.max(aWidth, aHeight);
+		float[] values = new float[length];
+		float[] result = new float[length];
+		int[] parabolas = new int[length];
+		float[] bounds = new float[length + 1];
+
+		for(int x = 0; x < aWidth; x++) {
+			for(int y = 0; y < aHeight; y++) {
+				values[y] = aGrid[(y * aWidth) + x];
+			}
+			transform(values, result, parabolas, bounds, aHeight);
+			for(int y = 0; y < aHeight; y++) {
+				aGrid[(y * aWidth) + x] = result[y];
+			}
+		}
+
+		for(int y = 0; y < aHeight; y++) {
+			int offset = y * aWidth;
+			System.arraycopy(aGrid, offset, values, 0, aWidth);
+			transform(values, result, parabolas, bounds, aWidth);
+			System.arraycopy(result, 0, aGrid, offset, aWidth);
+		}
+	}
+
+	/**
+	 * One dimensional transform, the lower envelope of the parabolas rooted at each sample.
+	 */
+	private static void transform(float[] aValues, float[] aResult, int[] aParabolas, float[] aBounds, int aCount)
+	{
+		int k = 0;
+		aParabolas[0] = 0;
+		aBounds[0] = Float.NEGATIVE_INFINITY;
+		aBounds[1] = Float.POSITIVE_INFINITY;
+		for(int q = 1; q < aCount; q++) {
+			float intersection = 0f;
+			while(true) {
+				int p = aParabolas[k];
+				intersection = ((aValues[q] + (q * q)) - (aValues[p] + (p * p))) / (2f * (q - p));
+				if(intersection > aBounds[k]) {break;}
+				k--;
+			}
+			k++;
+			aParabolas[k] = q;
+			aBounds[k] = intersection;
+			aBounds[k + 1] = Float.POSITIVE_INFINITY;
+		}
+
+		k = 0;
+		for(int q = 0; q < aCount; q++) {
+			while(aBounds[k + 1] < q) {k++;}
+			int p = aParabolas[k];
+			aResult[q] = ((q - p) * (q - p)) + aValues[p];
+		}
+	}
+}
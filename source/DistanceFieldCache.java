@@ -0,0 +1,70 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Least recently used cache of the distance fields of the view backgrounds, bounded by the bytes of the cached fields.
+ * A cached field gives the shadow for any radius, spread and offset, so changing them does not need the background again.
+ */
+public class DistanceFieldCache {
+
+	private LruCache<ShadowKey, DistanceField> mCache;
+
+	/**
+	 * @param aMaxBytes - maximum bytes of all cached fields.
+	 */
+	public DistanceFieldCache(int aMaxBytes)
+	{
+		super();
+		mCache = new LruCache<ShadowKey, DistanceField>(aMaxBytes) {
+			@Override
+			protected int sizeOf(ShadowKey aKey, DistanceField aField) {
+				return aField.byteCount();
+			}
+		};
+	}
+
+	/**
+	 * @return int - default size of the cache, 1/32 of the maximum heap size.
+	 */
+	public static int defaultMaxBytes()
+	{
+		return (int)Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param aKey - key of the background.
+	 * @return DistanceField - the cached field or null.
+	 */
+	public DistanceField get(ShadowKey aKey)
+	{
+		return mCache.get(aKey);
+	}
+
+	/**
+	 * @param aKey - key of the background.
+	 * @param aField - the field, must not be changed after it is cached.
+	 * @return void.
+	 */
+	public void put(ShadowKey aKey, DistanceField aField)
+	{
+		mCache.put(aKey, aField);
+	}
+
+	/**
+	 * Removes all fields from the cache.
+	 * @return void.
+	 */
+	public void clear()
+	{
+		mCache.evictAll();
+	}
+
+	/**
+	 * @return int - bytes of all cached fields.
+	 */
+	public int getSizeBytes()
+	{
+		return mCache.size();
+	}
+}
@@ -0,0 +1,132 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Runs the main thread steps which set the shadows on the views, all that are queued in one pass at the start of a frame.
+ * A pass stops when it runs over the frame budget and the rest is left for the next frame, at least one step runs per frame.
+ * Uses Choreographer on Android 4.1+ and Handler posts below, Choreographer is only loaded from FrameCallbackJellyBean
+ * so the class still loads on older devices.
+ */
+class FrameApplier implements Runnable {
+
+	private static final int kSDK_LEVEL_JELLY_BEAN = 16;
+
+	private final Handler mHandler;
+	private final Runnable mFrameStep;
+	private final ArrayDeque<Runnable> mQueue = new ArrayDeque<Runnable>();
+	private volatile long mBudgetNanos;
+	private boolean mIsScheduled;
+
+	/**
+	 * @param aHandler - handler of the main thread.
+	 * @param aBudgetMillis - main thread time per frame for the queued steps.
+	 */
+	FrameApplier(Handler aHandler, int aBudgetMillis)
+	{
+		mHandler = aHandler;
+		if(android.os.Build.VERSION.SDK_INT >= kSDK_LEVEL_JELLY_BEAN) {
+			mFrameStep = new FrameCallbackJellyBean(this);
+		} else {
+			mFrameStep = this;
+		}
+		setBudgetMillis(aBudgetMillis);
+	}
+
+	void setBudgetMillis(int aBudgetMillis)
+	{
+		mBudgetNanos = aBudgetMillis * 1000000L;
+	}
+
+	/**
+	 * @param aStep - step to run on the main thread.
+	 * @return void.
+	 */
+	void post(Runnable aStep)
+	{
+		synchronized(mQueue) {
+			mQueue.addLast(aStep);
+			schedule();
+		}
+	}
+
+	/**
+	 * Queues steps which should be run in the same pass, if the budget allows.
+	 * @param aSteps - steps to run on the main thread.
+	 * @return void.
+	 */
+	void postAll(Collection<Runnable> aSteps)
+	{
+		if(aSteps.isEmpty()) {return;}
+		synchronized(mQueue) {
+			mQueue.addAll(aSteps);
+			schedule();
+		}
+	}
+
+	/* Called with the lock of mQueue held. */
+	private void schedule()
+	{
+		if(mIsScheduled) {return;}
+		mIsScheduled = true;
+		mHandler.post(mFrameStep);
+	}
+
+	/**
+	 * Runs a pass on the main thread, at the start of a frame on Android 4.1+.
+	 */
+	@Override
+	public void run()
+	{
+		long start = System.nanoTime();
+		long budgetNanos = mBudgetNanos;
+		do {
+			Runnable step = null;
+			synchronized(mQueue) {
+				step = mQueue.pollFirst();
+				if(step == null) {
+					mIsScheduled = false;
+					return;
+				}
+			}
+			step.run();
+		} while(System.nanoTime() - start < budgetNanos);
+
+		synchronized(mQueue) {
+			if(mQueue.isEmpty()) {
+				mIsScheduled = false;
+			} else {
+				mHandler.post(mFrameStep);
+			}
+		}
+	}
+
+	/**
+	 * Posted to the handler on Android 4.1+, waits for the next frame and runs the pass then.
+	 */
+	private static class FrameCallbackJellyBean implements Choreographer.FrameCallback, Runnable {
+
+		private final FrameApplier mFrameApplier;
+
+		FrameCallbackJellyBean(FrameApplier aFrameApplier)
+		{
+			mFrameApplier = aFrameApplier;
+		}
+
+		@Override
+		public void run()
+		{
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long aFrameTimeNanos)
+		{
+			mFrameApplier.run();
+		}
+	}
+}
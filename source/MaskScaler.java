@@ -0,0 +1,147 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * Shrinks and enlarges alpha masks for blurring large shadows at a lower resolution.
+ * Shadows are low frequency, so a mask blurred at 1/2, 1/4 or 1/8 of its size and scaled back up
+ * with bilinear filtering looks the same as one blurred at full size.
+ * With the factors of factorForRadius the alpha of a rectangle differs from the full size result by at most 18 of 255
+ * for the box blur and 12 of 255 for the Gaussian blur, and by at most 10 of 255 for factor 2, see MaskScalerTest.
+ * The error is largest just above a threshold, where the radius on the small mask is rounded the most.
+ */
+public class MaskScaler {
+
+	private MaskScaler() {}
+
+	/**
+	 * Picks the downsample factor for a blur radius, so the radius on the small mask stays at least 8 pixels.
+	 * With smaller radii the rounding of the radius becomes visible.
+	 * @param aRadius - blur radius in pixels at full size.
+	 * @return int - 1, 2, 4 or 8.
+	 */
+	public static int factorForRadius(int aRadius)
+	{
+		if(aRadius < 16) {return 1;}
+		if(aRadius < 32) {return 2;}
+		if(aRadius < 64) {return 4;}
+		return 8;
+	}
+
+	/**
+	 * Radius of a box blur on the downsampled mask which gives the same spread as aRadius at full size.
+	 * Subtracts the blur already added by the block averaging and by the bilinear upsampling.
+	 * @param aRadius - box blur radius in pixels at full size.
+	 * @param aFactor - downsample factor.
+	 * @return int - box blur radius to use on the downsampled mask, at least 1.
+	 */
+	public static int scaleBoxRadius(int aRadius, int aFactor)
+	{
+		double variance = ((aRadius * (aRadius + 1)) / 3.0) - scalingVariance(aFactor);
+		double product = (3.0 * variance) / (aFactor * aFactor);
+		return Math.max(1, (int)Math.round((Math.sqrt(1.0 + (4.0 * Math.max(product, 0.0))) - 1.0) / 2.0));
+	}
+
+	/**
+	 * Radius of a Gaussian blur on the downsampled mask which gives the same spread as aRadius at full size.
+	 * Uses the radius to sigma conversion of BoxGaussianBlurBackend.sigmaForRadius.
+	 * @param aRadius - Gaussian blur radius in pixels at full size.
+	 * @param aFactor - downsample factor.
+	 * @return int - Gaussian blur radius to use on the downsampled mask, at least 1.
+	 */
+	public static int scaleGaussianRadius(int aRadius, int aFactor)
+	{
+		float sigma = BoxGaussianBlurBackend.sigmaForRadius(aRadius);
+		double variance = (sigma * sigma) - scalingVariance(aFactor);
+		double sigmaSmall = Math.sqrt(Math.max(variance, 0.0)) / aFactor;
+		return Math.max(1, (int)Math.round((sigmaSmall - 0.6) / 0.4));
+	}
+
+	/**
+	 * @param aFactor - downsample factor.
+	 * @return double - variance in full size pixels added by averaging aFactor blocks and by bilinear upsampling.
+	 */
+	private static double scalingVariance(int aFactor)
+	{
+		return (((aFactor * aFactor) - 1) / 12.0) + ((aFactor * aFactor) / 6.0);
+	}
+
+	/**
+	 * Shrinks the mask by averaging aFactor x aFactor blocks. Blocks at the right and bottom border
+	 * which stick out of the mask count the missing pixels as transparent.
+	 * @param aMask - mask to shrink.
+	 * @param aFactor - downsample factor.
+	 * @return AlphaMask - mask with size ceil(width / aFactor) x ceil(height / aFactor).
+	 */
+	public static AlphaMask downsample(AlphaMask aMask, int aFactor)
+	{
+		int width = (aMask.width + aFactor - 1) / aFactor;
+		int height = (aMask.height + aFactor - 1) / aFactor;
+		int div = aFactor * aFactor;
+		int reciprocal = BoxBlur.reciprocal(div);
+		AlphaMask maskRet = new AlphaMask(width, height);
+
+		int[] sums = new int[width];
+		for(int row = 0; row < height; row++) {
+			for(int col = 0; col < width; col++) {sums[col] = 0;}
+
+			int rowEnd = Math.min((row + 1) * aFactor, aMask.height);
+			for(int y = row * aFactor; y < rowEnd; y++) {
+				int offset = y * aMask.width;
+				int x = 0;
+				for(int col = 0; col < width; col++) {
+					int xEnd = Math.min(x + aFactor, aMask.width);
+					int sum = sums[col];
+					for(; x < xEnd; x++) {
+						sum += aMask.pixels[offset + x] & 0xFF;
+					}
+					sums[col] = sum;
+				}
+			}
+
+			int offset = row * width;
+			for(int col = 0; col < width; col++) {
+				maskRet.pixels[offset + col] = (byte)BoxBlur.divide(sums[col] + (div / 2), div, reciprocal);
+			}
+		}
+		return maskRet;
+	}
+
+	/**
+	 * Enlarges the mask by aFactor with bilinear filtering, sampling pixel centers the same way a filtered
+	 * Canvas.drawBitmap does. On the device the shadows are scaled with the Canvas, this is for code running off the device.
+	 * @param aMask - mask to enlarge.
+	 * @param aFactor - upsample factor.
+	 * @param aWidth - width of the result, at most aMask.width * aFactor.
+	 * @param aHeight - height of the result, at most aMask.height * aFactor.
+	 * @return AlphaMask - the enlarged mask.
+	 */
+	public static AlphaMask upsampleBilinear(AlphaMask aMask, int aFactor, int aWidth, int aHeight)
+	{
+		AlphaMask maskRet = new AlphaMask(aWidth, aHeight);
+		int[] x0 = new int[aWidth];
+		int[] x1 = new int[aWidth];
+		float[] fx = new float[aWidth];
+		for(int x = 0; x < aWidth; x++) {
+			float srcX = Math.max(0f, ((x + 0.5f) / aFactor) - 0.5f);
+			x0[x] = Math.min((int)srcX, aMask.width - 1);
+			x1[x] = Math.min(x0[x] + 1, aMask.width - 1);
+			fx[x] = srcX - (int)srcX;
+		}
+
+		for(int y = 0; y < aHeight; y++) {
+			float srcY = Math.max(0f, ((y + 0.5f) / aFactor) - 0.5f);
+			int y0 = Math.min((int)srcY, aMask.height - 1);
+			int y1 = Math.min(y0 + 1, aMask.height - 1);
+			float fy = srcY - (int)srcY;
+			int offset0 = y0 * aMask.width;
+			int offset1 = y1 * aMask.width;
+			int offset = y * aWidth;
+
+			for(int x = 0; x < aWidth; x++) {
+				float top = ((aMask.pixels[offset0 + x0[x]] & 0xFF) * (1f - fx[x])) + ((aMask.pixels[offset0 + x1[x]] & 0xFF) * fx[x]);
+				float bottom = ((aMask.pixels[offset1 + x0[x]] & 0xFF) * (1f - fx[x])) + ((aMask.pixels[offset1 + x1[x]] & 0xFF) * fx[x]);
+				maskRet.pixels[offset + x] = (byte)Math.round((top * (1f - fy)) + (bottom * fy));
+			}
+		}
+		return maskRet;
+	}
+}
@@ -0,0 +1,136 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool for the decoration jobs which runs the jobs with higher priority first and jobs with the same priority
+ * in the order they were submitted. The threads run with an android thread priority, by default
+ * THREAD_PRIORITY_BACKGROUND, so they do not compete with the UI thread.
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+	/** Priority of jobs for views which are on screen. */
+	public static final int PRIORITY_VISIBLE = 10;
+	/** Priority of jobs submitted without a priority. */
+	public static final int PRIORITY_NORMAL = 0;
+	/** Priority of jobs for views which are not on screen. */
+	public static final int PRIORITY_HIDDEN = -10;
+
+	private final AtomicLong mSequence = new AtomicLong();
+
+	/**
+	 * Creates a pool with one thread with background priority.
+	 */
+	public PriorityExecutor()
+	{
+		this(1, Process.THREAD_PRIORITY_BACKGROUND);
+	}
+
+	/**
+	 * @param aThreadsCount - count of threads of the pool.
+	 * @param aThreadPriority - android priority of the threads, for example Process.THREAD_PRIORITY_BACKGROUND.
+	 */
+	public PriorityExecutor(int aThreadsCount, int aThreadPriority)
+	{
+		super(aThreadsCount, aThreadsCount, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new PriorityThreadFactory(aThreadPriority));
+	}
+
+	/**
+	 * @param aTask - job to run.
+	 * @param aPriority - priority of the job, jobs with higher priority run first.
+	 * @return Future - handle of the job which can be cancelled.
+	 */
+	public Future<?> submit(Runnable aTask, int aPriority)
+	{
+		PriorityFuture<Object> future = new PriorityFuture<Object>(aTask, null, aPriority, mSequence.getAndIncrement());
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public void execute(Runnable aCommand)
+	{
+		if(aCommand instanceof PriorityFuture) {
+			super.execute(aCommand);
+		} else {
+			super.execute(newTaskFor(aCommand, null));
+		}
+	}
+
+	@Override
+	protected <T> FutureTask<T> newTaskFor(Runnable aRunnable, T aValue)
+	{
+		return new PriorityFuture<T>(aRunnable, aValue, PRIORITY_NORMAL, mSequence.getAndIncrement());
+	}
+
+	@Override
+	protected <T> FutureTask<T> newTaskFor(Callable<T> aCallable)
+	{
+		return new PriorityFuture<T>(aCallable, PRIORITY_NORMAL, mSequence.getAndIncrement());
+	}
+
+	/**
+	 * Job in the queue, ordered by priority and then by the order in which it was submitted.
+	 */
+	private static class PriorityFuture<T> extends FutureTask<T> implements Comparable<PriorityFuture<?>> {
+
+		private final int mPriority;
+		private final long mSequence;
+
+		PriorityFuture(Runnable aRunnable, T aValue, int aPriority, long aSequence)
+		{
+			super(aRunnable, aValue);
+			mPriority = aPriority;
+			mSequence = aSequence;
+		}
+
+		PriorityFuture(Callable<T> aCallable, int aPriority, long aSequence)
+		{
+			super(aCallable);
+			mPriority = aPriority;
+			mSequence = aSequence;
+		}
+
+		@Override
+		public int compareTo(PriorityFuture<?> aOther)
+		{
+			if(mPriority != aOther.mPriority) {return (mPriority > aOther.mPriority) ? -1 : 1;}
+			if(mSequence == aOther.mSequence) {return 0;}
+			return (mSequence < aOther.mSequence) ? -1 : 1;
+		}
+	}
+
+	private static class PriorityThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger mCount = new AtomicInteger();
+		private final int mThreadPriority;
+
+		PriorityThreadFactory(int aThreadPriority)
+		{
+			mThreadPriority = aThreadPriority;
+		}
+
+		@Override
+		public Thread newThread(final Runnable aRunnable)
+		{
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(mThreadPriority);
+					aRunnable.run();
+				}
+			}, "ShadowViewDecorator-" + mCount.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.content.Context;
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.ScriptIntrinsicBlur;
+import android.support.v8.renderscript.Type;
+
+/**
+ * Blurs masks with ScriptIntrinsicBlur. RenderScript supports radii up to 25 pixels,
+ * larger radii are blurred with BoxGaussianBlurBackend.
+ * The RenderScript context and the script are created on the first blur and kept until release(),
+ * the allocations are kept while the masks have the same size.
+ */
+public class RenderScriptBlurBackend implements BlurBackend {
+
+	public static final int MAX_RADIUS = 25;
+
+	private Context mCtx;
+	private BlurBackend mFallback;
+	private RenderScript mRs;
+	private ScriptIntrinsicBlur mScript;
+	private Allocation mInput;
+	private Allocation mOutput;
+	private int mAllocationWidth;
+	private int mAllocationHeight;
+
+	public RenderScriptBlurBackend(Context aCtx)
+	{
+		this(aCtx, new StripeRunner());
+	}
+
+	/**
+	 * @param aCtx - context for RenderScript.
+	 * @param aStripeRunner - runner used by the Java fallback for radii above MAX_RADIUS.
+	 */
+	public RenderScriptBlurBackend(Context aCtx, StripeRunner aStripeRunner)
+	{
+		super();
+		mCtx = aCtx.getApplicationContext();
+		mFallback = new BoxGaussianBlurBackend(aStripeRunner);
+	}
+
+	@Override
+	public synchronized void blur(AlphaMask aMask, int aRadius)
+	{
+		if(aRadius <= 0) {return;}
+		if(aRadius > MAX_RADIUS) {
+			mFallback.blur(aMask, aRadius);
+			return;
+		}
+
+		if(mRs == null) {
+			mRs = RenderScript.create(mCtx);
+			mScript = ScriptIntrinsicBlur.create(mRs, Element.U8(mRs));
+		}
+		if(mInput == null || mAllocationWidth != aMask.width || mAllocationHeight != aMask.height) {
+			destroyAllocations();
+			Type type = Type.createXY(mRs, Element.U8(mRs), aMask.width, aMask.height);
+			mInput = Allocation.createTyped(mRs, type);
+			mOutput = Allocation.createTyped(mRs, type);
+			mAllocationWidth = aMask.width;
+			mAllocationHeight = aMask.height;
+		}
+
+		mInput.copyFrom(aMask.pixels);
+		mScript.setRadius(aRadius);
+		mScript.setInput(mInput);
+		mScript.forEach(mOutput);
+		mOutput.copyTo(aMask.pixels);
+	}
+
+	@Override
+	public int scaleRadius(int aRadius, int aFactor)
+	{
+		return MaskScaler.scaleGaussianRadius(aRadius, aFactor);
+	}
+
+	/**
+	 * Destroys the allocations, the script and the RenderScript context.
+	 * They are created again if the backend is used after this.
+	 * @return void.
+	 */
+	@Override
+	public synchronized void release()
+	{
+		destroyAllocations();
+		if(mScript != null) {
+			mScript.destroy();
+			mScript = null;
+		}
+		if(mRs != null) {
+			mRs.destroy();
+			mRs = null;
+		}
+	}
+
+	private void destroyAllocations()
+	{
+		if(mInput != null) {
+			mInput.destroy();
+			mOutput.destroy();
+			mInput = null;
+			mOutput = null;
+		}
+	}
+}
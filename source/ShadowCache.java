@@ -0,0 +1,95 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+/**
+ * Least recently used cache of shadow bitmaps, bounded by the bytes of the cached bitmaps.
+ * Cached bitmaps may be in use by views, so they are never recycled when evicted.
+ */
+public class ShadowCache {
+
+	private LruCache<ShadowKey, Bitmap> mCache;
+
+	/**
+	 * @param aMaxBytes - maximum bytes of all cached bitmaps.
+	 */
+	public ShadowCache(int aMaxBytes)
+	{
+		super();
+		mCache = new LruCache<ShadowKey, Bitmap>(aMaxBytes) {
+			@Override
+			protected int sizeOf(ShadowKey aKey, Bitmap aBitmap) {
+				return aBitmap.getRowBytes() * aBitmap.getHeight();
+			}
+		};
+	}
+
+	/**
+	 * @return int - default size of the cache, 1/16 of the maximum heap size.
+	 */
+	public static int defaultMaxBytes()
+	{
+		return (int)Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param aKey - key of the shadow.
+	 * @return Bitmap - the cached shadow or null.
+	 */
+	public Bitmap get(ShadowKey aKey)
+	{
+		return mCache.get(aKey);
+	}
+
+	/**
+	 * @param aKey - key of the shadow.
+	 * @param aBitmap - the shadow, must not be recycled or changed after it is cached.
+	 * @return void.
+	 */
+	public void put(ShadowKey aKey, Bitmap aBitmap)
+	{
+		mCache.put(aKey, aBitmap);
+	}
+
+	/**
+	 * Removes all shadows from the cache.
+	 * @return void.
+	 */
+	public void clear()
+	{
+		mCache.evictAll();
+	}
+
+	/**
+	 * @return int - count of get calls which found a shadow.
+	 */
+	public int getHitCount()
+	{
+		return mCache.hitCount();
+	}
+
+	/**
+	 * @return int - count of get calls which did not find a shadow.
+	 */
+	public int getMissCount()
+	{
+		return mCache.missCount();
+	}
+
+	/**
+	 * @return int - bytes of all cached bitmaps.
+	 */
+	public int getSizeBytes()
+	{
+		return mCache.size();
+	}
+
+	/**
+	 * @return int - maximum bytes of all cached bitmaps.
+	 */
+	public int getMaxBytes()
+	{
+		return mCache.maxSize();
+	}
+}
@@ -0,0 +1,136 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.graphics.ColorFilter;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.Arrays;
+
+/**
+ * Key of a shadow in the ShadowCache: the source of the shape plus all parameters which change the shadow.
+ * The source is either the identity of a drawable (its constant state, shared by drawables loaded from the same resource)
+ * or the content hash of an alpha mask.
+ */
+public class ShadowKey {
+
+	private static final int kSDK_LEVEL_KITKAT = 19;
+	private static final int kSDK_LEVEL_LOLLIPOP = 21;
+
+	private final Object mSource;
+	private final int[] mParams;
+	private final int mHashCode;
+
+	/**
+	 * @param aSource - source of the shape, compared with equals.
+	 * @param aParams - parameters of the shadow, including the algorithm.
+	 */
+	public ShadowKey(Object aSource, int... aParams)
+	{
+		super();
+		mSource = aSource;
+		mParams = aParams;
+		mHashCode = (31 * aSource.hashCode()) + Arrays.hashCode(aParams);
+	}
+
+	/**
+	 * Key for the shadow of a drawable drawn with the passed in size.
+	 * The state and the level of the drawable are part of the key, so pressed and normal backgrounds do not share a shadow.
+	 * So are its alpha and color filter, read on Android 4.4+ and 5.0+, or from the paint of a BitmapDrawable below,
+	 * as setAlpha and setColorFilter change a drawable which shares its constant state without changing the state.
+	 * Other such changes, like a tint, are not seen by the key: call mutate() on a drawable before changing it,
+	 * so it gets its own constant state and its own shadows.
+	 * @param aDrawable - drawable from which the shadow is made.
+	 * @param aWidth - width to which the drawable is drawn.
+	 * @param aHeight - height to which the drawable is drawn.
+	 * @param aParams - parameters of the shadow, including the algorithm.
+	 * @return ShadowKey - the key.
+	 */
+	public static ShadowKey forDrawable(Drawable aDrawable, int aWidth, int aHeight, int... aParams)
+	{
+		Drawable.ConstantState state = aDrawable.getConstantState();
+		Object source = (state != null) ? state : aDrawable;
+		ColorFilter colorFilter = getColorFilter(aDrawable);
+		if(colorFilter != null) {source = Arrays.asList(source, colorFilter);}
+		int[] params = Arrays.copyOf(aParams, aParams.length + 5);
+		params[aParams.length] = aWidth;
+		params[aParams.length + 1] = aHeight;
+		params[aParams.length + 2] = Arrays.hashCode(aDrawable.getState());
+		params[aParams.length + 3] = aDrawable.getLevel();
+		params[aParams.length + 4] = getAlpha(aDrawable);
+		return new ShadowKey(source, params);
+	}
+
+	/**
+	 * @param aDrawable - drawable from which the shadow is made.
+	 * @return int - alpha of the drawable, or -1 if it cannot be read on this version of Android.
+	 */
+	private static int getAlpha(Drawable aDrawable)
+	{
+		if(android.os.Build.VERSION.SDK_INT >= kSDK_LEVEL_KITKAT) {return aDrawable.getAlpha();}
+		if(aDrawable instanceof BitmapDrawable) {return ((BitmapDrawable)aDrawable).getPaint().getAlpha();}
+		return -1;
+	}
+
+	/**
+	 * @param aDrawable - drawable from which the shadow is made.
+	 * @return ColorFilter - color filter of the drawable, or null if it has none or it cannot be read on this version of Android.
+	 */
+	private static ColorFilter getColorFilter(Drawable aDrawable)
+	{
+		if(android.os.Build.VERSION.SDK_INT >= kSDK_LEVEL_LOLLIPOP) {return aDrawable.getColorFilter();}
+		if(aDrawable instanceof BitmapDrawable) {return ((BitmapDrawable)aDrawable).getPaint().getColorFilter();}
+		return null;
+	}
+
+	/**
+	 * Key for the shadow of an alpha mask.
+	 * @param aMask - mask from which the shadow is made.
+	 * @param aParams - parameters of the shadow, including the algorithm.
+	 * @return ShadowKey - the key.
+	 */
+	public static ShadowKey forMask(AlphaMask aMask, int... aParams)
+	{
+		return new ShadowKey(Long.valueOf(aMask.contentHash()), aParams);
+	}
+
+	/**
+	 * Keys of masks are made from the content of the mask, so they stay the same across process starts
+	 * and can be used for the DiskShadowCache. Keys of drawables and resources are only valid in the running process.
+	 * @return boolean - true if the key can be stored on disk.
+	 */
+	public boolean isPersistent()
+	{
+		return mSource instanceof Long;
+	}
+
+	/**
+	 * @return long - 64 bit FNV-1a hash of the source and the parameters, stable across process starts for persistent keys.
+	 */
+	public long persistentHash()
+	{
+		long source = (mSource instanceof Long) ? ((Long)mSource).longValue() : mSource.hashCode();
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ (source & 0xFFFFFFFFL)) * 0x100000001b3L;
+		hash = (hash ^ (source >>> 32)) * 0x100000001b3L;
+		for(int param : mParams) {
+			hash = (hash ^ param) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object aObject)
+	{
+		if(this == aObject) {return true;}
+		if(!(aObject instanceof ShadowKey)) {return false;}
+
+		ShadowKey key = (ShadowKey)aObject;
+		return mHashCode == key.mHashCode && mSource.equals(key.mSource) && Arrays.equals(mParams, key.mParams);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return mHashCode;
+	}
+}
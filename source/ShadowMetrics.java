@@ -0,0 +1,191 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Timings of one shadow request, from the submit of its job until the shadow is set on the view.
+ * The time of the request is split in stages: waiting in the queue of the executor, rasterizing the background,
+ * extracting its alpha, blurring or layering the mask, composing the shadow bitmap and setting it on the main thread.
+ * The job marks the stage it enters and the time since the previous mark goes to the previous stage. Each stage but
+ * the queue wait is also a Trace section on Android 4.3+, so it shows in systrace and Perfetto.
+ * Metrics are only recorded while ShadowViewDecorator has a ShadowMetricsListener.
+ */
+public class ShadowMetrics {
+
+	public static final int STAGE_QUEUE = 0;
+	public static final int STAGE_RASTERIZE = 1;
+	public static final int STAGE_EXTRACT = 2;
+	public static final int STAGE_BLUR = 3;
+	public static final int STAGE_COMPOSE = 4;
+	public static final int STAGE_APPLY = 5;
+	/** Sum of all stages, for getStageNanos and ShadowMetricsHistogram. */
+	public static final int STAGE_TOTAL = 6;
+
+	private static final int kSDK_LEVEL_JELLY_BEAN_MR2 = 18;
+	private static final boolean kIS_TRACE_AVAILABLE = Build.VERSION.SDK_INT >= kSDK_LEVEL_JELLY_BEAN_MR2;
+	private static final String[] kSTAGE_NAMES = {"queue", "rasterize", "extract", "blur", "compose", "apply", "total"};
+	private static final String[] kTRACE_SECTIONS = {null, "ShadowViewDecorator:rasterize", "ShadowViewDecorator:extract",
+			"ShadowViewDecorator:blur", "ShadowViewDecorator:compose", "ShadowViewDecorator:apply"};
+	private static final ThreadLocal<ShadowMetrics> sCurrent = new ThreadLocal<ShadowMetrics>();
+
+	private final String mRequest;
+	private final long[] mStageNanos = new long[STAGE_TOTAL];
+	private long mBytesAllocated;
+	private int mCacheHitCount;
+	private int mCacheMissCount;
+	private int mStage = -1;
+	private long mStageStartNanos;
+
+	/**
+	 * @param aRequest - name of the decorator method which made the request.
+	 */
+	ShadowMetrics(String aRequest)
+	{
+		super();
+		mRequest = aRequest;
+	}
+
+	/**
+	 * @return ShadowMetrics - metrics of the job running on the calling thread, or null.
+	 */
+	static ShadowMetrics current()
+	{
+		return sCurrent.get();
+	}
+
+	/**
+	 * @param aMetrics - metrics of the job which runs on the calling thread, null when the job is done.
+	 * @return void.
+	 */
+	static void setCurrent(ShadowMetrics aMetrics)
+	{
+		if(aMetrics == null) {
+			sCurrent.remove();
+		} else {
+			sCurrent.set(aMetrics);
+		}
+	}
+
+	/**
+	 * Adds the bytes of a new bitmap to the metrics of the job running on the calling thread, if it has metrics.
+	 * @param aBytes - bytes of the bitmap.
+	 * @return void.
+	 */
+	static void recordAllocation(long aBytes)
+	{
+		ShadowMetrics metrics = sCurrent.get();
+		if(metrics != null) {metrics.mBytesAllocated += aBytes;}
+	}
+
+	/**
+	 * Ends the current stage and starts the passed in one.
+	 * @param aStage - one of the STAGE constants but STAGE_TOTAL.
+	 * @return void.
+	 */
+	void startStage(int aStage)
+	{
+		long now = System.nanoTime();
+		endStage(now);
+		mStage = aStage;
+		mStageStartNanos = now;
+		if(kIS_TRACE_AVAILABLE && aStage != STAGE_QUEUE) {Trace.beginSection(kTRACE_SECTIONS[aStage]);}
+	}
+
+	/**
+	 * Ends the current stage, the time until the next startStage is not counted.
+	 * @return void.
+	 */
+	void endStage()
+	{
+		endStage(System.nanoTime());
+		mStage = -1;
+	}
+
+	/**
+	 * @param aIsHit - if the shadow cache had the shadow.
+	 * @return void.
+	 */
+	void recordCacheLookup(boolean aIsHit)
+	{
+		if(aIsHit) {
+			mCacheHitCount++;
+		} else {
+			mCacheMissCount++;
+		}
+	}
+
+	private void endStage(long aNow)
+	{
+		if(mStage < 0) {return;}
+		mStageNanos[mStage] += aNow - mStageStartNanos;
+		if(kIS_TRACE_AVAILABLE && mStage != STAGE_QUEUE) {Trace.endSection();}
+	}
+
+	/**
+	 * @param aStage - one of the STAGE constants.
+	 * @return String - name of the stage.
+	 */
+	public static String stageName(int aStage)
+	{
+		return kSTAGE_NAMES[aStage];
+	}
+
+	/**
+	 * @return String - name of the decorator method which made the request, for example dropShadow.
+	 */
+	public String getRequest()
+	{
+		return mRequest;
+	}
+
+	/**
+	 * @param aStage - one of the STAGE constants.
+	 * @return long - nanoseconds spent in the stage, or in all stages for STAGE_TOTAL.
+	 */
+	public long getStageNanos(int aStage)
+	{
+		if(aStage != STAGE_TOTAL) {return mStageNanos[aStage];}
+		long total = 0;
+		for(long nanos : mStageNanos) {
+			total += nanos;
+		}
+		return total;
+	}
+
+	/**
+	 * @return long - bytes of the bitmaps the request created, pooled bitmaps which were reused are not counted.
+	 */
+	public long getBytesAllocated()
+	{
+		return mBytesAllocated;
+	}
+
+	/**
+	 * @return int - count of shadow cache lookups which found the shadow or the blurred mask.
+	 */
+	public int getCacheHitCount()
+	{
+		return mCacheHitCount;
+	}
+
+	/**
+	 * @return int - count of shadow cache lookups which did not find it.
+	 */
+	public int getCacheMissCount()
+	{
+		return mCacheMissCount;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder(mRequest);
+		for(int stage = 0; stage <= STAGE_TOTAL; stage++) {
+			builder.append(' ').append(kSTAGE_NAMES[stage]).append('=').append(getStageNanos(stage) / 1000).append("us");
+		}
+		builder.append(" bytes=").append(mBytesAllocated).append(" cacheHits=").append(mCacheHitCount)
+				.append(" cacheMisses=").append(mCacheMissCount);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,143 @@
+package com.blogspot.techzealous.shadowviewdecorator;
+
+/**
+ * ShadowMetricsListener which aggregates the stage timings of all requests into histograms, to read p50, p95 and p99.
+ * Timings are counted in microseconds in buckets growing by an eighth of each power of two,
+ * so a percentile is within about 6% of the exact value, up to a minute. Recording a request is a few array increments and allocates nothing.
+ */
+public class ShadowMetricsHistogram implements ShadowMetricsListener {
+
+	private static final int kSUB_BUCKETS = 8;
+	private static final int kSUB_BUCKETS_SHIFT = 3;
+	/** Microseconds below 2^26, about 67 seconds, have their own bucket. */
+	private static final int kBUCKETS_COUNT = (26 - kSUB_BUCKETS_SHIFT + 1) * kSUB_BUCKETS;
+
+	private final long[][] mBuckets = new long[ShadowMetrics.STAGE_TOTAL + 1][kBUCKETS_COUNT];
+	private long mCount;
+	private long mBytesAllocated;
+	private long mCacheHitCount;
+	private long mCacheMissCount;
+
+	public ShadowMetricsHistogram()
+	{
+		super();
+	}
+
+	@Override
+	public synchronized void onShadowMetrics(ShadowMetrics aMetrics)
+	{
+		for(int stage = 0; stage <= ShadowMetrics.STAGE_TOTAL; stage++) {
+			mBuckets[stage][bucketOf(aMetrics.getStageNanos(stage) / 1000)]++;
+		}
+		mCount++;
+		mBytesAllocated += aMetrics.getBytesAllocated();
+		mCacheHitCount += aMetrics.getCacheHitCount();
+		mCacheMissCount += aMetrics.getCacheMissCount();
+	}
+
+	/**
+	 * @param aStage - one of the ShadowMetrics.STAGE constants, STAGE_TOTAL for the whole request.
+	 * @param aPercentile - percentile between 0 and 1, for example 0.95f for p95.
+	 * @return float - milliseconds which this share of the requests spent in the stage at most, 0 if there are none.
+	 */
+	public synchronized float getPercentileMillis(int aStage, float aPercentile)
+	{
+		if(mCount == 0) {return 0f;}
+		long rank = Math.max(1, (long)Math.ceil(mCount * Math.max(0f, Math.min(aPercentile, 1f))));
+		long[] buckets = mBuckets[aStage];
+		long count = 0;
+		for(int index = 0; index < kBUCKETS_COUNT; index++) {
+			count += buckets[index];
+			if(count >= rank) {return bucketMicros(index) / 1000f;}
+		}
+		return bucketMicros(kBUCKETS_COUNT - 1) / 1000f;
+	}
+
+	/**
+	 * @return long - count of recorded requests.
+	 */
+	public synchronized long getCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * @return long - bytes of the bitmaps created by all recorded requests.
+	 */
+	public synchronized long getBytesAllocated()
+	{
+		return mBytesAllocated;
+	}
+
+	/**
+	 * @return long - shadow cache lookups of all recorded requests which found the shadow.
+	 */
+	public synchronized long getCacheHitCount()
+	{
+		return mCacheHitCount;
+	}
+
+	/**
+	 * @return long - shadow cache lookups of all recorded requests which did not find the shadow.
+	 */
+	public synchronized long getCacheMissCount()
+	{
+		return mCacheMissCount;
+	}
+
+	/**
+	 * Forgets all recorded requests.
+	 * @return void.
+	 */
+	public synchronized void reset()
+	{
+		for(long[] buckets : mBuckets) {
+			for(int index = 0; index < kBUCKETS_COUNT; index++) {
+				buckets[index] = 0;
+			}
+		}
+		mCount = 0;
+		mBytesAllocated = 0;
+		mCacheHitCount = 0;
+		mCacheMissCount = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder builder = new StringBuilder("requests=").append(mCount);
+		for(int stage = 0; stage <= ShadowMetrics.STAGE_TOTAL; stage++) {
+			builder.append(' ').append(ShadowMetrics.stageName(stage)).append(" p50/p95/p99=")
+					.append(getPercentileMillis(stage, 0.5f)).append('/')
+					.append(getPercentileMillis(stage, 0.95f)).append('/')
+					.append(getPercentileMillis(stage, 0.99f)).append("ms");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Values below kSUB_BUCKETS have a bucket each, above each power of two is split in kSUB_BUCKETS buckets.
+	 * @param aMicros - timing in microseconds.
+	 * @return int - index of the bucket.
+	 */
+	private static int bucketOf(long aMicros)
+	{
+		if(aMicros < kSUB_BUCKETS) {return (int)Math.max(aMicros, 0);}
+		int exponent = 63 - Long.numberOfLeadingZeros(aMicros);
+		int index = ((exponent - kSUB_BUCKETS_SHIFT + 1) * kSUB_BUCKETS)
+				+ (int)((aMicros >> (exponent - kSUB_BUCKETS_SHIFT)) & (kSUB_BUCKETS - 1));
+		return Math.min(index, kBUCKETS_COUNT - 1);
+	}
+
+	/**
+	 * @param aIndex - index of a bucket.
+	 * @return long - middle of the microseconds counted in the bucket.
+	 */
+	private static long bucketMicros(int aIndex)
+	{
+		if(aIndex < kSUB_BUCKETS) {return aIndex;}
+		int shift = (aIndex / kSUB_BUCKETS) - 1;
+		long lower = (long)(kSUB_BUCKETS + (aIndex % kSUB_BUCKETS)) << shift;
+		return lower + ((1L << shift) / 2);
+	}
+}